@@ -3,6 +3,8 @@ package io.agilehandy.k8s;
 import io.agilehandy.k8s.common.InformerProperties;
 import io.agilehandy.k8s.endpoints.EndpointsInformer;
 import io.agilehandy.k8s.eureka.EurekaLiteProperties;
+import io.agilehandy.k8s.leader.LeaderElectionProperties;
+import io.agilehandy.k8s.sharding.ShardingProperties;
 
 import org.springframework.boot.ApplicationRunner;
 import org.springframework.boot.SpringApplication;
@@ -11,7 +13,8 @@ import org.springframework.boot.context.properties.EnableConfigurationProperties
 import org.springframework.context.annotation.Bean;
 
 @SpringBootApplication
-@EnableConfigurationProperties(value={InformerProperties.class, EurekaLiteProperties.class})
+@EnableConfigurationProperties(value={InformerProperties.class, EurekaLiteProperties.class
+		, ShardingProperties.class, LeaderElectionProperties.class})
 public class MainApplication {
 
 	public static void main(String[] args) {
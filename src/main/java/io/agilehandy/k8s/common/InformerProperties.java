@@ -15,6 +15,11 @@
  */
 package io.agilehandy.k8s.common;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
 /**
@@ -28,7 +33,41 @@ public class InformerProperties {
 	private String labelEnabled = "cloud.spring.io/enabled";
 	private String labelRegister = "cloud.spring.io/register";
 	private String primaryPortName = "primary_port";
+	// a single namespace, or all-namespaces for one cluster wide informer
 	private String namespace = "default";
+	// namespaces watched each by an informer and workers of its own, instead of namespace
+	private List<String> namespaces = new ArrayList<>();
+	// labels of the namespaces to watch, followed as namespaces are labeled, instead of namespaces
+	private Map<String, String> namespaceSelector = new HashMap<>();
+	// watch discovery.k8s.io endpoint slices instead of endpoints, so a change to a
+	// large service only costs as much as the slice that changed
+	private boolean endpointSlices = false;
+	// register not ready addresses as STARTING, or take them OUT_OF_SERVICE once they
+	// were up, instead of leaving them out of eureka
+	private boolean registerNotReady = true;
+	// watch only endpoints carrying the enabled label, whatever its value, instead of
+	// every endpoints object; the value is still checked client side
+	private boolean serverSideFiltering = true;
+	// how long to wait at startup for the informer to list all endpoints
+	private int syncTimeoutSeconds = 60;
+	// registrations or cancellations sent together by the startup reconciliation
+	private int reconcileBatchSize = 100;
+	// port of the prometheus metrics endpoint, 0 to disable it
+	private int metricsPort = 9464;
+	// threads of every namespace reconciling its queued endpoints, each working on a different object
+	private int reconcileWorkers = 4;
+	// first retry delay of an endpoints object that failed to reconcile, doubled on every failure
+	private long retryBaseDelayMillis = 200;
+	private long retryMaxDelaySeconds = 300;
+
+	// reconcile through a reactor pipeline instead of the work queue and its workers
+	private boolean reactive = false;
+
+	// reactive mode: how long the events of an object must pause before it is reconciled
+	private long debounceMillis = 100;
+
+	// reactive mode: objects of a namespace waiting for eureka at once
+	private int reactiveConcurrency = 32;
 
 	public String getLabelEnabled() {
 		return labelEnabled;
@@ -69,4 +108,116 @@ public class InformerProperties {
 	public void setNamespace(String namespace) {
 		this.namespace = namespace;
 	}
+
+	public List<String> getNamespaces() {
+		return namespaces;
+	}
+
+	public void setNamespaces(List<String> namespaces) {
+		this.namespaces = namespaces;
+	}
+
+	public Map<String, String> getNamespaceSelector() {
+		return namespaceSelector;
+	}
+
+	public void setNamespaceSelector(Map<String, String> namespaceSelector) {
+		this.namespaceSelector = namespaceSelector;
+	}
+
+	public boolean isServerSideFiltering() {
+		return serverSideFiltering;
+	}
+
+	public void setServerSideFiltering(boolean serverSideFiltering) {
+		this.serverSideFiltering = serverSideFiltering;
+	}
+
+	public int getSyncTimeoutSeconds() {
+		return syncTimeoutSeconds;
+	}
+
+	public void setSyncTimeoutSeconds(int syncTimeoutSeconds) {
+		this.syncTimeoutSeconds = syncTimeoutSeconds;
+	}
+
+	public int getReconcileBatchSize() {
+		return reconcileBatchSize;
+	}
+
+	public void setReconcileBatchSize(int reconcileBatchSize) {
+		this.reconcileBatchSize = reconcileBatchSize;
+	}
+
+	public int getMetricsPort() {
+		return metricsPort;
+	}
+
+	public void setMetricsPort(int metricsPort) {
+		this.metricsPort = metricsPort;
+	}
+
+	public int getReconcileWorkers() {
+		return reconcileWorkers;
+	}
+
+	public void setReconcileWorkers(int reconcileWorkers) {
+		this.reconcileWorkers = reconcileWorkers;
+	}
+
+	public long getRetryBaseDelayMillis() {
+		return retryBaseDelayMillis;
+	}
+
+	public void setRetryBaseDelayMillis(long retryBaseDelayMillis) {
+		this.retryBaseDelayMillis = retryBaseDelayMillis;
+	}
+
+	public long getRetryMaxDelaySeconds() {
+		return retryMaxDelaySeconds;
+	}
+
+	public void setRetryMaxDelaySeconds(long retryMaxDelaySeconds) {
+		this.retryMaxDelaySeconds = retryMaxDelaySeconds;
+	}
+
+	public boolean isEndpointSlices() {
+		return endpointSlices;
+	}
+
+	public void setEndpointSlices(boolean endpointSlices) {
+		this.endpointSlices = endpointSlices;
+	}
+
+	public boolean isRegisterNotReady() {
+		return registerNotReady;
+	}
+
+	public void setRegisterNotReady(boolean registerNotReady) {
+		this.registerNotReady = registerNotReady;
+	}
+
+	public boolean isReactive() {
+		return reactive;
+	}
+
+	public void setReactive(boolean reactive) {
+		this.reactive = reactive;
+	}
+
+	public long getDebounceMillis() {
+		return debounceMillis;
+	}
+
+	public void setDebounceMillis(long debounceMillis) {
+		this.debounceMillis = debounceMillis;
+	}
+
+	public int getReactiveConcurrency() {
+		return reactiveConcurrency;
+	}
+
+	public void setReactiveConcurrency(int reactiveConcurrency) {
+		this.reactiveConcurrency = reactiveConcurrency;
+	}
 }
@@ -15,8 +15,12 @@
  */
 package io.agilehandy.k8s.common;
 
+import java.util.UUID;
+
 import io.fabric8.kubernetes.api.model.ObjectMeta;
 
+import org.springframework.util.StringUtils;
+
 /**
  * @author Haytham Mohamed
  **/
@@ -31,4 +35,13 @@ public class Util {
 		return Boolean.valueOf(cfg.toLowerCase()).booleanValue();
 	}
 
+	// name of this replica: the configured one, else the pod name
+	static public String identity(String configured) {
+		if (StringUtils.hasText(configured)) {
+			return configured;
+		}
+		String hostname = System.getenv("HOSTNAME");
+		return StringUtils.hasText(hostname) ? hostname : UUID.randomUUID().toString();
+	}
+
 }
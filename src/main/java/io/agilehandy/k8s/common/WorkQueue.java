@@ -0,0 +1,147 @@
+/*
+ * Copyright 2012-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.agilehandy.k8s.common;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Queue of keys to reconcile, in the manner of the Kubernetes controller work
+ * queue: a key is queued at most once however often it is added, a key being
+ * processed is not handed to a second worker but queued again once it is done,
+ * and a key that failed is added back after an exponentially growing delay.
+ *
+ * @author Haytham Mohamed
+ **/
+
+public class WorkQueue<K> {
+
+	private final Deque<K> queue = new ArrayDeque<>();
+	// queued, or added again while being processed
+	private final Set<K> dirty = new HashSet<>();
+	private final Set<K> processing = new HashSet<>();
+	private final Map<K, Integer> failures = new ConcurrentHashMap<>();
+
+	private final long baseDelayMillis;
+	private final long maxDelayMillis;
+	private final ScheduledExecutorService delays;
+	private boolean shutdown;
+
+	public WorkQueue(long baseDelayMillis, long maxDelayMillis) {
+		this.baseDelayMillis = Math.max(1, baseDelayMillis);
+		this.maxDelayMillis = Math.max(this.baseDelayMillis, maxDelayMillis);
+		this.delays = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "WORK_QUEUE_RETRY");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	public synchronized void add(K key) {
+		if (shutdown || !dirty.add(key)) {
+			return;
+		}
+		if (!processing.contains(key)) {
+			queue.add(key);
+			notify();
+		}
+	}
+
+	/**
+	 * Wait for the next key, which must be handed back through {@link #done}.
+	 * Returns {@code null} once the queue is shut down.
+	 */
+	public synchronized K take() throws InterruptedException {
+		while (queue.isEmpty() && !shutdown) {
+			wait();
+		}
+		if (shutdown) {
+			return null;
+		}
+		K key = queue.poll();
+		dirty.remove(key);
+		processing.add(key);
+		return key;
+	}
+
+	public synchronized void done(K key) {
+		processing.remove(key);
+		if (dirty.contains(key)) {
+			queue.add(key);
+			notify();
+		}
+	}
+
+	/**
+	 * Add the key again after the backoff delay of its consecutive failures.
+	 */
+	public void retry(K key) {
+		retry(key, this::add);
+	}
+
+	/**
+	 * Count a failure of the key and hand it to {@code readd} after its backoff
+	 * delay, for keys that are processed elsewhere than from this queue.
+	 */
+	public void retry(K key, Consumer<K> readd) {
+		long delay = backoff(key);
+		synchronized (this) {
+			if (shutdown) {
+				return;
+			}
+		}
+		delays.schedule(() -> readd.accept(key), delay, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Reset the failures of a key, after it was processed successfully.
+	 */
+	public void forget(K key) {
+		failures.remove(key);
+	}
+
+	public int getFailures(K key) {
+		return failures.getOrDefault(key, 0);
+	}
+
+	long backoff(K key) {
+		int shift = failures.merge(key, 1, Integer::sum) - 1;
+		// base * 2^shift, capped before the shift could overflow
+		if (shift >= Long.numberOfLeadingZeros(baseDelayMillis) - 1) {
+			return maxDelayMillis;
+		}
+		return Math.min(baseDelayMillis << shift, maxDelayMillis);
+	}
+
+	public synchronized int size() {
+		return queue.size();
+	}
+
+	public synchronized void shutdown() {
+		shutdown = true;
+		notifyAll();
+		delays.shutdownNow();
+	}
+
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2012-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.agilehandy.k8s.endpoints;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import io.agilehandy.k8s.eureka.Application;
+import io.fabric8.kubernetes.api.model.discovery.EndpointSlice;
+import io.fabric8.kubernetes.client.informers.SharedIndexInformer;
+import io.fabric8.kubernetes.client.informers.cache.Cache;
+import io.fabric8.kubernetes.client.informers.cache.Indexer;
+
+/**
+ * Reads the applications of endpoint slices one slice at a time. The slices
+ * in the informer cache are indexed by their service, so the other slices of
+ * a service can be consulted before an application that left a slice is
+ * cancelled: an endpoint moving between slices is held by both for a while.
+ *
+ * @author Haytham Mohamed
+ **/
+
+class EndpointSlices implements EndpointsSource<EndpointSlice> {
+
+	static final String SERVICE_INDEX = "service";
+
+	private final Indexer<EndpointSlice> indexer;
+	private final EndpointsEureka registrar;
+
+	EndpointSlices(SharedIndexInformer<EndpointSlice> informer, EndpointsEureka registrar) {
+		// to be added before the informer starts
+		informer.addIndexers(Collections.singletonMap(SERVICE_INDEX
+				, slice -> Collections.singletonList(getShardKey(slice))));
+		this.indexer = informer.getIndexer();
+		this.registrar = registrar;
+	}
+
+	@Override
+	public List<Application> getApplications(EndpointSlice slice) {
+		return registrar.getRegisteredApplications(slice);
+	}
+
+	@Override
+	public String getShardKey(EndpointSlice slice) {
+		return slice.getMetadata().getNamespace() + "/" + EndpointsEureka.serviceName(slice);
+	}
+
+	@Override
+	public List<String> getOtherKeys(String key, Application application) {
+		String namespace = key.substring(0, Math.max(0, key.indexOf('/')));
+		List<String> keys = new ArrayList<>();
+		for (EndpointSlice slice : indexer.byIndex(SERVICE_INDEX, namespace + "/" + application.getName())) {
+			String other = Cache.metaNamespaceKeyFunc(slice);
+			if (!other.equals(key) && registrar.getRegisteredApplications(slice).stream()
+					.anyMatch(app -> app.getRegistrationKey().equals(application.getRegistrationKey()))) {
+				keys.add(other);
+			}
+		}
+		return keys;
+	}
+
+}
@@ -16,16 +16,16 @@
 package io.agilehandy.k8s.endpoints;
 
 import java.util.Set;
-import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ConcurrentHashMap;
 
 import io.agilehandy.k8s.common.InformerProperties;
-import io.fabric8.kubernetes.api.model.Endpoints;
+import io.fabric8.kubernetes.api.model.HasMetadata;
 import io.fabric8.kubernetes.client.KubernetesClient;
-import io.fabric8.kubernetes.client.informers.cache.Lister;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
 
 /**
@@ -37,54 +37,53 @@ public class EndpointsCache {
 
 	private static Logger logger = LoggerFactory.getLogger(EndpointsCache.class);
 
-	// set of resources UID
-	private final Set<String> cache = new ConcurrentSkipListSet();
+	// set of resources UID, hashed as nothing needs them in order
+	private final Set<String> cache = ConcurrentHashMap.newKeySet();
 
 	private final KubernetesClient client;
 	private final InformerProperties properties;
-	private final Lister<Endpoints> lister;
 
 	public EndpointsCache(KubernetesClient client
 			, InformerProperties properties
-			, @Qualifier("endpointsLister") Lister<Endpoints> lister) {
+			, MeterRegistry meterRegistry) {
 		this.client = client;
 		this.properties = properties;
-		this.lister = lister;
+		meterRegistry.gaugeCollectionSize("eureka.controller.endpoints.cached", Tags.empty(), cache);
 	}
 
-	public boolean exists(Endpoints ep) {
+	public boolean exists(HasMetadata ep) {
 		return cache.contains(ep.getMetadata().getUid());
 	}
 
-	public boolean same(Endpoints oldep, Endpoints newep) {
+	public boolean same(HasMetadata oldep, HasMetadata newep) {
 		return oldep.getMetadata().getUid().equals(newep.getMetadata().getUid());
 	}
 
-	public boolean isUpdated(Endpoints oldep, Endpoints newep) {
+	public boolean isUpdated(HasMetadata oldep, HasMetadata newep) {
 		return same(oldep, newep)
 		  && !oldep.getMetadata().getResourceVersion()
 				.equals(newep.getMetadata().getResourceVersion());
 	}
 
-	public boolean updateExisting(Endpoints oldep, Endpoints newep) {
+	public boolean updateExisting(HasMetadata oldep, HasMetadata newep) {
 		return exists(oldep) && isUpdated(oldep, newep);
 	}
 
-	public boolean pollingExisting(Endpoints oldep, Endpoints newep) {
+	public boolean pollingExisting(HasMetadata oldep, HasMetadata newep) {
 		return exists(oldep) && !isUpdated(oldep, newep);
 	}
 
-	public void removeFromCache(Endpoints ep) {
+	public void removeFromCache(HasMetadata ep) {
 		logger.debug("remove from cache: " + ep.getMetadata().getUid());
 		cache.remove(ep.getMetadata().getUid());
 	}
 
-	public void addToCache(Endpoints ep) {
+	public void addToCache(HasMetadata ep) {
 		logger.debug("add to cache: " + ep.getMetadata().getUid());
 		cache.add(ep.getMetadata().getUid());
 	}
 
-	public void replace(Endpoints oldep, Endpoints newep) {
+	public void replace(HasMetadata oldep, HasMetadata newep) {
 		removeFromCache(oldep);
 		addToCache(newep);
 	}
@@ -0,0 +1,513 @@
+/*
+ * Copyright 2012-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.agilehandy.k8s.endpoints;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.agilehandy.k8s.common.InformerProperties;
+import io.agilehandy.k8s.common.Util;
+import io.agilehandy.k8s.common.WorkQueue;
+import io.agilehandy.k8s.eureka.Application;
+import io.fabric8.kubernetes.api.model.HasMetadata;
+import io.fabric8.kubernetes.client.informers.cache.Cache;
+import io.fabric8.kubernetes.client.informers.cache.Lister;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.Disposable;
+import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.UnicastProcessor;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Reconciles endpoints objects, or endpoint slices, against Eureka from a work
+ * queue.
+ *
+ * Informer events only queue the namespace/name key of an object, so any
+ * number of events for the same object collapse into one reconciliation.
+ * A worker reads the latest state of the object from the informer cache,
+ * diffs its addresses against the ones last applied to Eureka, and sends only
+ * the difference; an object that failed is retried with exponential backoff.
+ * Every watched namespace has a controller, with a queue and workers of its
+ * own, so a busy namespace does not hold up the others. With sharding, objects
+ * owned by another replica are left to it; a standby replica only prepares the
+ * instances of every object, so it is ready to take over from the leader.
+ *
+ * With endpoint slices every slice is an object of its own, so a change to a
+ * large service only diffs the slice that changed. An application that moved
+ * to another slice of the service is not cancelled, only handed over.
+ *
+ * A pod that is not ready stays registered, as STARTING, or OUT_OF_SERVICE
+ * once it was up; turning ready or not ready only sends a status update.
+ *
+ * In reactive mode the keys flow through a Reactor pipeline instead of the
+ * queue and its workers: grouped by object, each object is reconciled once
+ * its events paused for the debounce time, and at most a given number of
+ * objects wait for Eureka at once, without a thread blocked per object. The
+ * informer thread never waits: a key goes into the pipeline only when its
+ * object has none there yet, later events just push back the time it is
+ * taken, so the pipeline holds one key per object at most. Only the
+ * reconciliations wait for Eureka, so under a slow Eureka the debounced keys
+ * wait inside the pipeline instead of holding up the informer.
+ *
+ * @author Haytham Mohamed
+ **/
+
+public class EndpointsController<T extends HasMetadata> {
+
+	private static Logger logger = LoggerFactory.getLogger(EndpointsController.class);
+
+	private final String namespace;
+	private final EndpointsEureka registrar;
+	private final Lister<T> lister;
+	private final EndpointsSource<T> source;
+	private final Ownership ownership;
+	private final InformerProperties properties;
+	private final WorkQueue<String> queue;
+
+	// namespace/name -> applications registered with eureka for that object
+	private final Map<String, List<Application>> applied = new ConcurrentHashMap<>();
+	// namespace/name -> the service key it is sharded on, still known once it is deleted
+	private final Map<String, String> shardKeys = new ConcurrentHashMap<>();
+	private volatile boolean releasing;
+
+	private final MeterRegistry meterRegistry;
+	private final Timer reconcileTimer;
+	private final Counter retries;
+	private final Gauge queueDepth;
+	private ExecutorService workers;
+
+	// reactive mode: keys in, and the pipeline reconciling them
+	private final UnicastProcessor<String> events;
+	private final FluxSink<String> intake;
+	// key -> time of the latest event of an object waiting in the pipeline
+	private final Map<String, Long> pending = new ConcurrentHashMap<>();
+	private Scheduler scheduler;
+	private Disposable pipeline;
+	// keys being reconciled, and the ones added again meanwhile; pipeline thread only
+	private final Set<String> reconciling = new HashSet<>();
+	private final Set<String> again = new HashSet<>();
+
+	public EndpointsController(String namespace
+			, EndpointsEureka registrar
+			, Lister<T> lister
+			, EndpointsSource<T> source
+			, Ownership ownership
+			, InformerProperties properties
+			, MeterRegistry meterRegistry) {
+		this.namespace = namespace;
+		this.registrar = registrar;
+		this.lister = lister;
+		this.source = source;
+		this.ownership = ownership;
+		this.properties = properties;
+		this.queue = new WorkQueue<>(properties.getRetryBaseDelayMillis()
+				, TimeUnit.SECONDS.toMillis(properties.getRetryMaxDelaySeconds()));
+		this.meterRegistry = meterRegistry;
+		Tags tags = Tags.of("namespace", namespace);
+		this.reconcileTimer = meterRegistry.timer("eureka.controller.reconcile", tags);
+		this.retries = meterRegistry.counter("eureka.controller.reconcile.retries", tags);
+		this.events = properties.isReactive() ? UnicastProcessor.create() : null;
+		this.intake = events != null ? events.sink() : null;
+		this.queueDepth = Gauge.builder("eureka.controller.queue.depth", this, EndpointsController::depth)
+				.tags(tags)
+				.register(meterRegistry);
+	}
+
+	public String getNamespace() {
+		return namespace;
+	}
+
+	public void enqueue(T ep) {
+		add(Cache.metaNamespaceKeyFunc(ep));
+	}
+
+	private void add(String key) {
+		if (intake != null) {
+			// an object has one key in the pipeline at most, its later events only
+			// push back the time it is taken
+			if (pending.put(key, System.nanoTime()) == null) {
+				intake.next(key);
+			}
+		} else {
+			queue.add(key);
+		}
+	}
+
+	private int depth() {
+		return intake != null ? pending.size() : queue.size();
+	}
+
+	/**
+	 * Record the objects the startup reconciliation already brought in line
+	 * with Eureka, so their first events cause no further requests. Returns
+	 * their applications.
+	 */
+	public List<Application> seed(Collection<T> endpoints) {
+		List<Application> seeded = new ArrayList<>();
+		endpoints.forEach(ep -> {
+			List<Application> applications = desired(ep);
+			if (!applications.isEmpty()) {
+				String key = Cache.metaNamespaceKeyFunc(ep);
+				applied.put(key, applications);
+				shardKeys.put(key, shardKey(ep));
+				seeded.addAll(applications);
+			}
+		});
+		return seeded;
+	}
+
+	/**
+	 * Queue every object again, e.g. after the replicas sharing the endpoints
+	 * changed, so each one is taken up or handed over.
+	 */
+	public void resync() {
+		lister.list().forEach(this::enqueue);
+		applied.keySet().forEach(this::add);
+	}
+
+	public synchronized void start() {
+		if (workers != null || pipeline != null) {
+			return;
+		}
+		if (events != null) {
+			startPipeline();
+			return;
+		}
+		int threads = Math.max(1, properties.getReconcileWorkers());
+		AtomicInteger count = new AtomicInteger();
+		workers = Executors.newFixedThreadPool(threads
+				, r -> new Thread(r, "ENDPOINTS_WORKER_" + namespace + "_" + count.incrementAndGet()));
+		for (int i = 0; i < threads; i++) {
+			workers.execute(this::work);
+		}
+		logger.debug("Started {} endpoints workers for namespace {}", threads, namespace);
+	}
+
+	public synchronized void stop() {
+		queue.shutdown();
+		if (workers != null) {
+			workers.shutdownNow();
+		}
+		if (pipeline != null) {
+			pipeline.dispose();
+			scheduler.dispose();
+		}
+		meterRegistry.remove(reconcileTimer);
+		meterRegistry.remove(retries);
+		meterRegistry.remove(queueDepth);
+	}
+
+	/**
+	 * Cancel every registration this controller made, once its namespace is
+	 * no longer watched. Called after {@link #stop()}.
+	 */
+	public void release() throws InterruptedException {
+		logger.debug("Cancelling the registrations of {} endpoints of namespace {}", applied.size(), namespace);
+		// every object of the namespace goes, whatever the others still hold
+		releasing = true;
+		for (String key : new ArrayList<>(applied.keySet())) {
+			reconcile(key, null);
+		}
+	}
+
+	private void work() {
+		try {
+			String key;
+			while ((key = queue.take()) != null) {
+				try {
+					if (reconcile(key)) {
+						queue.forget(key);
+					} else {
+						retry(key);
+					}
+				} catch (RuntimeException e) {
+					logger.warn("Reconciling endpoints {} failed: {}", key, e.getMessage());
+					retry(key);
+				} finally {
+					queue.done(key);
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void startPipeline() {
+		scheduler = Schedulers.newSingle("ENDPOINTS_PIPELINE_" + namespace, true);
+		long debounce = TimeUnit.MILLISECONDS.toNanos(Math.max(1, properties.getDebounceMillis()));
+		pipeline = events
+				// an object is taken once its own events paused, however busy the others are
+				.flatMap(key -> settled(key, debounce, debounce), Integer.MAX_VALUE)
+				.publishOn(scheduler)
+				.flatMap(this::reconcileAsync, Math.max(1, properties.getReactiveConcurrency()))
+				.subscribe(success -> { }, e -> logger.error("Endpoints pipeline of namespace {} failed", namespace, e));
+		logger.debug("Started the endpoints pipeline for namespace {}", namespace);
+	}
+
+	// the key once its object had no event for the debounce time
+	private Mono<String> settled(String key, long waitNanos, long debounceNanos) {
+		return Mono.delay(Duration.ofNanos(waitNanos), scheduler)
+				.flatMap(tick -> {
+					Long last = pending.get(key);
+					long quiet = last == null ? debounceNanos : System.nanoTime() - last;
+					return quiet >= debounceNanos ? Mono.just(key) : settled(key, debounceNanos - quiet, debounceNanos);
+				});
+	}
+
+	// reconcile without waiting for eureka on the pipeline thread, and one
+	// object at a time: a key added while it is reconciled goes again after
+	private Mono<Boolean> reconcileAsync(String key) {
+		pending.remove(key);
+		if (!reconciling.add(key)) {
+			again.add(key);
+			return Mono.empty();
+		}
+		return Mono.defer(() -> {
+					Reconciliation reconciliation = begin(key, get(key));
+					return reconciliation == null
+							? Mono.just(true)
+							: Mono.fromFuture(reconciliation.sent())
+									.publishOn(scheduler)
+									.then(Mono.fromCallable(reconciliation::apply));
+				})
+				.onErrorResume(e -> {
+					logger.warn("Reconciling endpoints {} failed: {}", key, e.getMessage());
+					return Mono.just(false);
+				})
+				.doOnNext(success -> {
+					if (success) {
+						queue.forget(key);
+					} else {
+						retries.increment();
+						queue.retry(key, this::add);
+					}
+				})
+				.doFinally(signal -> {
+					reconciling.remove(key);
+					if (again.remove(key)) {
+						add(key);
+					}
+				});
+	}
+
+	private void retry(String key) {
+		retries.increment();
+		queue.retry(key);
+		logger.debug("Retrying endpoints {} after {} failures", key, queue.getFailures(key));
+	}
+
+	/**
+	 * Bring the registrations of one endpoints object in line with its latest
+	 * state, returning false if some request failed.
+	 */
+	boolean reconcile(String key) throws InterruptedException {
+		return reconcile(key, get(key));
+	}
+
+	private boolean reconcile(String key, T ep) throws InterruptedException {
+		Reconciliation reconciliation = begin(key, ep);
+		return reconciliation == null || reconciliation.apply();
+	}
+
+	/**
+	 * Send the requests bringing an object in line with its latest state, or
+	 * hand it over; null when that needs no answer from Eureka.
+	 */
+	private Reconciliation begin(String key, T ep) {
+		long start = System.nanoTime();
+		String shardKey = ep != null ? shardKey(ep) : shardKeys.getOrDefault(key, key);
+		if (ep != null) {
+			shardKeys.put(key, shardKey);
+		}
+		if (!ownership.owns(shardKey)) {
+			disown(key);
+			if (ep != null && ownership.isStandby()) {
+				desired(ep).forEach(registrar::prepare);
+			}
+			reconcileTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+			return null;
+		}
+		List<Application> current = applied.getOrDefault(key, Collections.emptyList());
+		List<Application> desired = ep == null
+				? Collections.emptyList()
+				: EndpointsDiff.settle(current, desired(ep));
+		EndpointsDiff diff = EndpointsDiff.between(current, desired);
+		if (!diff.isEmpty()) {
+			logger.debug("Reconciling endpoints {} -> {}", key, diff);
+		}
+
+		Reconciliation reconciliation = new Reconciliation(key, start, current, desired);
+		Set<String> changed = new HashSet<>();
+		diff.getRemoved().stream()
+				.filter(app -> releasing || source.getOtherKeys(key, app).isEmpty())
+				.forEach(app -> reconciliation.cancellations.put(app, registrar.cancel(app)));
+		diff.getAdded().forEach(app -> reconciliation.registrations.put(app, registrar.register(app)));
+		diff.getMoved().forEach(app -> reconciliation.registrations.put(app, registrar.register(app)));
+		// a pod turning ready or not ready stays registered, only its status changes
+		diff.getStatusChanged().forEach(app -> reconciliation.statusUpdates.put(app, registrar.updateStatus(app)));
+		reconciliation.registrations.keySet().forEach(app -> changed.add(app.getRegistrationKey()));
+		reconciliation.statusUpdates.keySet().forEach(app -> changed.add(app.getRegistrationKey()));
+		// the rest is already registered and only needs its heartbeats
+		desired.stream()
+				.filter(app -> !changed.contains(app.getRegistrationKey()))
+				.forEach(registrar::track);
+		return reconciliation;
+	}
+
+	// the requests of one reconciliation, and what they leave in eureka
+	private class Reconciliation {
+
+		private final String key;
+		private final long start;
+		private final List<Application> current;
+		private final List<Application> desired;
+		private final Map<Application, CompletableFuture<Boolean>> cancellations = new LinkedHashMap<>();
+		private final Map<Application, CompletableFuture<Boolean>> registrations = new LinkedHashMap<>();
+		private final Map<Application, CompletableFuture<Boolean>> statusUpdates = new LinkedHashMap<>();
+
+		Reconciliation(String key, long start, List<Application> current, List<Application> desired) {
+			this.key = key;
+			this.start = start;
+			this.current = current;
+			this.desired = desired;
+		}
+
+		// completes once every request got its answer, whichever it is
+		CompletableFuture<Void> sent() {
+			List<CompletableFuture<Boolean>> requests = new ArrayList<>(cancellations.values());
+			requests.addAll(registrations.values());
+			requests.addAll(statusUpdates.values());
+			return CompletableFuture.allOf(requests.toArray(new CompletableFuture[0]))
+					.handle((done, e) -> null);
+		}
+
+		/**
+		 * Record what eureka holds now, waiting for the answers if need be;
+		 * false if some request failed.
+		 */
+		boolean apply() throws InterruptedException {
+			try {
+				// the desired applications that did not fail to register, the ones
+				// that failed to update with their previous status, and the
+				// removed ones that failed to cancel
+				List<Application> now = new ArrayList<>();
+				boolean success = true;
+				for (Application app : desired) {
+					CompletableFuture<Boolean> registration = registrations.get(app);
+					CompletableFuture<Boolean> statusUpdate = statusUpdates.get(app);
+					if (statusUpdate != null && !succeeded(statusUpdate)) {
+						now.add(previous(current, app));
+						success = false;
+					} else if (registration == null || succeeded(registration)) {
+						now.add(app);
+					} else {
+						success = false;
+					}
+				}
+				for (Map.Entry<Application, CompletableFuture<Boolean>> cancellation : cancellations.entrySet()) {
+					if (!succeeded(cancellation.getValue())) {
+						now.add(cancellation.getKey());
+						success = false;
+					}
+				}
+				if (now.isEmpty()) {
+					applied.remove(key);
+					shardKeys.remove(key);
+				} else {
+					applied.put(key, now);
+				}
+				return success;
+			} finally {
+				reconcileTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+			}
+		}
+	}
+
+	// another replica heartbeats the object now, its registrations stay in eureka
+	private void disown(String key) {
+		List<Application> applications = applied.remove(key);
+		shardKeys.remove(key);
+		if (applications != null) {
+			logger.debug("Handing endpoints {} over to another replica", key);
+			// the other objects holding them belong to the same service, and so
+			// change hands along with this one
+			applications.forEach(registrar::untrack);
+		}
+	}
+
+	/**
+	 * The namespace/name key of the service of an object, the one replicas
+	 * shard on.
+	 */
+	String shardKey(T ep) {
+		return source.getShardKey(ep);
+	}
+
+	private static Application previous(List<Application> current, Application app) {
+		return current.stream()
+				.filter(old -> old.getRegistrationKey().equals(app.getRegistrationKey()))
+				.findFirst()
+				.orElse(app);
+	}
+
+	private T get(String key) {
+		int slash = key.indexOf('/');
+		return slash < 0
+				? lister.get(key)
+				: lister.namespace(key.substring(0, slash)).get(key.substring(slash + 1));
+	}
+
+	/**
+	 * The applications of an object that should be registered with Eureka,
+	 * none if it is not enabled.
+	 */
+	public List<Application> desired(T ep) {
+		return Util.isEnabledLabel(ep.getMetadata(), properties.getLabelEnabled())
+				? source.getApplications(ep)
+				: Collections.emptyList();
+	}
+
+	private static boolean succeeded(CompletableFuture<Boolean> request) throws InterruptedException {
+		try {
+			return Boolean.TRUE.equals(request.get());
+		} catch (ExecutionException e) {
+			return false;
+		}
+	}
+
+}
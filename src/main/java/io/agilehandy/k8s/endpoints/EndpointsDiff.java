@@ -0,0 +1,117 @@
+/*
+ * Copyright 2012-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.agilehandy.k8s.endpoints;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import com.netflix.appinfo.InstanceInfo.InstanceStatus;
+import io.agilehandy.k8s.eureka.Application;
+
+/**
+ * Set difference between two snapshots of the applications of an endpoints
+ * object. Applications are matched on their registration key (service name and
+ * targetRef UID); a matched application whose IP or port changed is moved,
+ * one whose status changed only needs a status update.
+ *
+ * @author Haytham Mohamed
+ **/
+public class EndpointsDiff {
+
+	private final List<Application> added = new ArrayList<>();
+	private final List<Application> removed = new ArrayList<>();
+	private final List<Application> moved = new ArrayList<>();
+	private final List<Application> statusChanged = new ArrayList<>();
+
+	public static EndpointsDiff between(Collection<Application> previous, Collection<Application> current) {
+		Map<String, Application> before = index(previous);
+		Map<String, Application> after = index(current);
+		EndpointsDiff diff = new EndpointsDiff();
+		after.forEach((key, app) -> {
+			Application old = before.get(key);
+			if (old == null) {
+				diff.added.add(app);
+			} else if (old.getPort() != app.getPort()
+					|| !Objects.equals(old.getHostname(), app.getHostname())) {
+				diff.moved.add(app);
+			} else if (old.getStatus() != app.getStatus()) {
+				diff.statusChanged.add(app);
+			}
+		});
+		before.forEach((key, app) -> {
+			if (!after.containsKey(key)) {
+				diff.removed.add(app);
+			}
+		});
+		return diff;
+	}
+
+	/**
+	 * The status to give an instance that is not ready: STARTING until it was
+	 * in service, OUT_OF_SERVICE from then on, so clients stop routing to it
+	 * while it stays registered.
+	 */
+	public static Application settle(Application previous, Application desired) {
+		if (previous != null && desired.getStatus() == InstanceStatus.STARTING
+				&& (previous.getStatus() == InstanceStatus.UP || previous.getStatus() == InstanceStatus.OUT_OF_SERVICE)) {
+			return desired.withStatus(InstanceStatus.OUT_OF_SERVICE);
+		}
+		return desired;
+	}
+
+	public static List<Application> settle(Collection<Application> previous, Collection<Application> desired) {
+		Map<String, Application> before = index(previous);
+		List<Application> settled = new ArrayList<>(desired.size());
+		desired.forEach(app -> settled.add(settle(before.get(app.getRegistrationKey()), app)));
+		return settled;
+	}
+
+	private static Map<String, Application> index(Collection<Application> applications) {
+		Map<String, Application> map = new LinkedHashMap<>();
+		applications.forEach(app -> map.put(app.getRegistrationKey(), app));
+		return map;
+	}
+
+	public List<Application> getAdded() {
+		return added;
+	}
+
+	public List<Application> getRemoved() {
+		return removed;
+	}
+
+	public List<Application> getMoved() {
+		return moved;
+	}
+
+	public List<Application> getStatusChanged() {
+		return statusChanged;
+	}
+
+	public boolean isEmpty() {
+		return added.isEmpty() && removed.isEmpty() && moved.isEmpty() && statusChanged.isEmpty();
+	}
+
+	@Override
+	public String toString() {
+		return "added: " + added.size() + ", removed: " + removed.size() + ", moved: " + moved.size()
+				+ ", status changed: " + statusChanged.size();
+	}
+}
@@ -16,19 +16,25 @@
 package io.agilehandy.k8s.endpoints;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 import java.util.function.Predicate;
-import java.util.stream.Collectors;
 
-import com.netflix.appinfo.InstanceInfo;
+import com.netflix.appinfo.InstanceInfo.InstanceStatus;
 import io.agilehandy.k8s.common.InformerProperties;
 import io.agilehandy.k8s.common.Util;
 import io.agilehandy.k8s.eureka.Application;
 import io.agilehandy.k8s.eureka.Eureka;
+import io.agilehandy.k8s.lease.LeaseRenewalScheduler;
 import io.fabric8.kubernetes.api.model.EndpointAddress;
 import io.fabric8.kubernetes.api.model.EndpointPort;
 import io.fabric8.kubernetes.api.model.EndpointSubset;
 import io.fabric8.kubernetes.api.model.Endpoints;
+import io.fabric8.kubernetes.api.model.discovery.DiscoveryEndpointPort;
+import io.fabric8.kubernetes.api.model.discovery.Endpoint;
+import io.fabric8.kubernetes.api.model.discovery.EndpointSlice;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -44,12 +50,17 @@ public class EndpointsEureka {
 
 	private static Logger logger = LoggerFactory.getLogger(EndpointsEureka.class);
 
+	// set by the endpoint slice controller to the service a slice belongs to
+	static final String SERVICE_NAME_LABEL = "kubernetes.io/service-name";
+
 	private final Eureka lite;
 	private final InformerProperties properties;
+	private final LeaseRenewalScheduler scheduler;
 
-	public EndpointsEureka(Eureka lite, InformerProperties properties) {
+	public EndpointsEureka(Eureka lite, InformerProperties properties, LeaseRenewalScheduler scheduler) {
 		this.lite = lite;
 		this.properties = properties;
+		this.scheduler = scheduler;
 	}
 
 	public void register(Endpoints ep) {
@@ -57,7 +68,7 @@ public class EndpointsEureka {
 				+ " with uid " + ep.getMetadata().getUid()
 				+ " and version " + ep.getMetadata().getResourceVersion());
 		if (Util.isEnabledLabel(ep.getMetadata(), properties.getLabelRegister())) {
-			this.getApplications(ep).stream().forEach(this.lite::register);
+			this.getApplications(ep).stream().forEach(this::register);
 		} else {
 			logger.debug("service registration label is disabled");
 		}
@@ -70,27 +81,75 @@ public class EndpointsEureka {
 		if (Util.isEnabledLabel(ep.getMetadata(), properties.getLabelRegister())) {
 			this.getApplications(ep)
 					.stream()
-					.forEach(app -> this.lite.cancel(app.getName(), app.getInstance_id()));
+					.forEach(this::cancel);
 		} else {
 			logger.debug("service registration label is disabled");
 		}
 	}
 
-	public void renewLease(Endpoints ep) {
-		logger.debug("EndPointsEureka::re-registering " + ep.getMetadata().getName()
-				+ " with uid " + ep.getMetadata().getUid()
-				+ " and version " + ep.getMetadata().getResourceVersion());
-		if (Util.isEnabledLabel(ep.getMetadata(), properties.getLabelRegister())) {
-			this.getInstancesInfo(ep).stream().forEach(lite::renew);
-		} else {
-			logger.debug("service registration label is disabled");
-		}
+	// the applications of an endpoints object that should be registered with eureka
+	public List<Application> getRegisteredApplications(Endpoints ep) {
+		return Util.isEnabledLabel(ep.getMetadata(), properties.getLabelRegister())
+				? this.getApplications(ep)
+				: Collections.emptyList();
+	}
+
+	// the applications of an endpoint slice that should be registered with eureka
+	public List<Application> getRegisteredApplications(EndpointSlice slice) {
+		return Util.isEnabledLabel(slice.getMetadata(), properties.getLabelRegister())
+				? this.getApplications(slice)
+				: Collections.emptyList();
+	}
+
+	// registration goes out asynchronously, its outcome is fed back to the
+	// lease renewal scheduler which re-registers on a later heartbeat if needed
+	CompletableFuture<Boolean> register(Application app) {
+		this.scheduler.schedule(app);
+		return this.lite.registerAsync(app).whenComplete((registered, e) -> {
+			if (e != null) {
+				logger.debug("registration of {} failed: {}", app.getRegistrationKey(), e.getMessage());
+			}
+			this.scheduler.registered(app, e == null && Boolean.TRUE.equals(registered));
+		});
+	}
+
+	// a new status goes out as a status update, and with the heartbeats from now on
+	CompletableFuture<Boolean> updateStatus(Application app) {
+		this.scheduler.schedule(app);
+		return this.lite.statusUpdateAsync(app).whenComplete((updated, e) -> {
+			if (e == null && Boolean.TRUE.equals(updated)) {
+				this.scheduler.statusUpdated(app);
+			}
+		});
+	}
+
+	CompletableFuture<Boolean> cancel(Application app) {
+		this.scheduler.unschedule(app);
+		return this.lite.cancelAsync(app.getName(), app.getInstance_id());
 	}
 
-	private List<InstanceInfo> getInstancesInfo(Endpoints ep) {
-		return this.getApplications(ep).stream()
-				.map(lite::getInstanceInfo)
-				.collect(Collectors.toList());
+	// an application Eureka already knows about only needs its heartbeats
+	void track(Application app) {
+		this.scheduler.schedule(app);
+	}
+
+	// stop the heartbeats of an application another replica took over
+	void untrack(Application app) {
+		this.scheduler.unschedule(app);
+	}
+
+	// the instances of the previous run that no endpoints object claimed at startup
+	List<Application> takeRestored() {
+		return this.scheduler.takeRestored();
+	}
+
+	boolean hasRestored() {
+		return this.scheduler.hasRestored();
+	}
+
+	// build the instance info of an application ahead of taking it over
+	void prepare(Application app) {
+		this.lite.getInstanceInfo(app);
 	}
 
 	// construct applications to use with Eureka lite API
@@ -99,19 +158,10 @@ public class EndpointsEureka {
 		List<Application> applications = new ArrayList();
 		if (!subsetsList.isEmpty()) {
 			for (EndpointSubset subset : subsetsList) {
-				List<EndpointAddress> addresses = subset.getAddresses();
-				for (EndpointAddress endpointAddress : addresses) {
-					logger.debug("endpointAddress: {}", endpointAddress.toString());
-					String instanceId = null;
-					if (endpointAddress.getTargetRef() != null) {
-						instanceId = endpointAddress.getTargetRef().getUid();
-					}
-
-					// TODO: check and error handling if instanceId is null
-
-					EndpointPort endpointPort = this.findEndpointPort(subset);
-					applications.add(new Application(ep.getMetadata().getName(),
-							instanceId, endpointAddress.getIp(), endpointPort.getPort()));
+				this.addApplications(applications, ep, subset, subset.getAddresses(), InstanceStatus.UP);
+				if (properties.isRegisterNotReady()) {
+					this.addApplications(applications, ep, subset, subset.getNotReadyAddresses()
+							, InstanceStatus.STARTING);
 				}
 			}
 		} else {
@@ -123,20 +173,81 @@ public class EndpointsEureka {
 		return applications;
 	}
 
+	private void addApplications(List<Application> applications, Endpoints ep, EndpointSubset subset
+			, List<EndpointAddress> addresses, InstanceStatus status) {
+		if (addresses == null) {
+			return;
+		}
+		for (EndpointAddress endpointAddress : addresses) {
+			logger.debug("endpointAddress: {}", endpointAddress.toString());
+			String instanceId = null;
+			if (endpointAddress.getTargetRef() != null) {
+				instanceId = endpointAddress.getTargetRef().getUid();
+			}
+
+			// TODO: check and error handling if instanceId is null
+
+			EndpointPort endpointPort = this.findEndpointPort(subset);
+			applications.add(new Application(ep.getMetadata().getName(),
+					instanceId, endpointAddress.getIp(), endpointPort.getPort(), status, ep.getMetadata().getNamespace()));
+		}
+	}
+
+	// construct the applications of one endpoint slice, named after its service;
+	// only the slice is read, however many other slices the service has
+	public List<Application> getApplications(EndpointSlice slice) {
+		List<Application> applications = new ArrayList<>();
+		if (slice.getEndpoints() == null || slice.getEndpoints().isEmpty()
+				|| slice.getPorts() == null || slice.getPorts().isEmpty()) {
+			logger.debug("no endpoints in slice {} yet", slice.getMetadata().getName());
+			return applications;
+		}
+		DiscoveryEndpointPort port = this.findPort(slice.getPorts(), DiscoveryEndpointPort::getName);
+		if (port.getPort() == null) {
+			logger.debug("slice {} does not define a port", slice.getMetadata().getName());
+			return applications;
+		}
+		String service = serviceName(slice);
+		for (Endpoint endpoint : slice.getEndpoints()) {
+			// a ready condition left out means ready, as with the addresses of endpoints
+			boolean ready = endpoint.getConditions() == null
+					|| !Boolean.FALSE.equals(endpoint.getConditions().getReady());
+			if ((!ready && !properties.isRegisterNotReady())
+					|| endpoint.getAddresses() == null || endpoint.getAddresses().isEmpty()) {
+				continue;
+			}
+			String instanceId = endpoint.getTargetRef() != null ? endpoint.getTargetRef().getUid() : null;
+			// all the addresses of an endpoint belong to the same pod
+			applications.add(new Application(service, instanceId, endpoint.getAddresses().get(0), port.getPort()
+					, ready ? InstanceStatus.UP : InstanceStatus.STARTING, slice.getMetadata().getNamespace()));
+		}
+		return applications;
+	}
+
+	static String serviceName(EndpointSlice slice) {
+		String service = slice.getMetadata().getLabels() != null
+				? slice.getMetadata().getLabels().get(SERVICE_NAME_LABEL)
+				: null;
+		return service != null ? service : slice.getMetadata().getName();
+	}
+
 	// Find first defined endPoint port.
 	// If a primary port is defined it would be considered
 	// leveraging function in spring-cloud-kubernetes project
 	private EndpointPort findEndpointPort(EndpointSubset s) {
-		List<EndpointPort> ports = s.getPorts();
-		EndpointPort endpointPort;
+		return this.findPort(s.getPorts(), EndpointPort::getName);
+	}
+
+	private <P> P findPort(List<P> ports, Function<P, String> name) {
+		P endpointPort;
 		if (ports.size() == 1) {
 			endpointPort = ports.get(0);
 		}
 		else {
-			Predicate<EndpointPort> portPredicate;
+			Predicate<P> portPredicate;
 			if (!StringUtils.isEmpty(properties.getPrimaryPortName())) {
 				portPredicate = port ->
-						properties.getPrimaryPortName().equalsIgnoreCase(port.getName());
+						properties.getPrimaryPortName().equalsIgnoreCase(name.apply(port));
 			}
 			else {
 				portPredicate = port -> true;
@@ -17,70 +17,96 @@ package io.agilehandy.k8s.endpoints;
 
 import io.agilehandy.k8s.common.InformerProperties;
 import io.agilehandy.k8s.common.Util;
-import io.fabric8.kubernetes.api.model.Endpoints;
+import io.fabric8.kubernetes.api.model.HasMetadata;
 import io.fabric8.kubernetes.client.informers.ResourceEventHandler;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import org.springframework.stereotype.Component;
-
 /**
+ * Queues every relevant endpoints, or endpoint slice, event on the
+ * {@link EndpointsController} of its namespace, which does the Eureka I/O off
+ * the informer's dispatch thread.
+ *
  * @author Haytham Mohamed
  **/
 
-@Component
-public class EndpointsEventHandler implements ResourceEventHandler<Endpoints> {
+public class EndpointsEventHandler<T extends HasMetadata> implements ResourceEventHandler<T> {
 
 	private static Logger logger = LoggerFactory.getLogger(EndpointsEventHandler.class);
 
-	private final EndpointsEureka registrar;
+	private final EndpointsController<T> controller;
 	private final InformerProperties properties;
 	private final EndpointsCache cache;
+	private final Timer addTimer;
+	private final Timer updateTimer;
+	private final Timer deleteTimer;
 
-	public EndpointsEventHandler(EndpointsEureka registrar, InformerProperties properties, EndpointsCache cache) {
-		this.registrar = registrar;
+	public EndpointsEventHandler(EndpointsController<T> controller, InformerProperties properties, EndpointsCache cache
+			, MeterRegistry meterRegistry) {
+		this.controller = controller;
 		this.properties = properties;
 		this.cache = cache;
+		this.addTimer = meterRegistry.timer("eureka.controller.informer.events", "event", "add");
+		this.updateTimer = meterRegistry.timer("eureka.controller.informer.events", "event", "update");
+		this.deleteTimer = meterRegistry.timer("eureka.controller.informer.events", "event", "delete");
+	}
+
+	@Override
+	public void onAdd(T ep) {
+		addTimer.record(() -> add(ep));
+	}
+
+	@Override
+	public void onUpdate(T oldep, T newep) {
+		updateTimer.record(() -> update(oldep, newep));
 	}
 
 	@Override
-	public void onAdd(Endpoints ep) {
+	public void onDelete(T ep, boolean deletedFinalStateUnknown) {
+		deleteTimer.record(() -> delete(ep));
+	}
+
+	private void add(T ep) {
 		if (Util.isEnabledLabel(ep.getMetadata(), properties.getLabelEnabled())
 				&& !cache.exists(ep)
 		) {
 			logger.debug("Add Endpoint Action -> {}", log(ep));
 			cache.addToCache(ep);
+			controller.enqueue(ep);
 		}
 	}
 
-	@Override
-	public void onUpdate(Endpoints oldep, Endpoints newep) {
-		if (Util.isEnabledLabel(oldep.getMetadata(), properties.getLabelEnabled())
-				&& Util.isEnabledLabel(newep.getMetadata(), properties.getLabelEnabled())
-				&& cache.exists(oldep)
-		) {
+	private void update(T oldep, T newep) {
+		boolean enabled = Util.isEnabledLabel(newep.getMetadata(), properties.getLabelEnabled());
+		if (Util.isEnabledLabel(oldep.getMetadata(), properties.getLabelEnabled()) || cache.exists(oldep)) {
 			logger.debug("Update Endpoint Action (old) -> {}", log(oldep));
 			logger.debug("Update Endpoint Action (new) -> {}", log(newep));
-			if (cache.updateExisting(oldep, newep)) {
-				registrar.register(newep);
-			} else if (cache.pollingExisting(oldep, newep)){
-				registrar.renewLease(newep);
+			if (!enabled) {
+				// the label was taken off: the controller finds nothing to register
+				// any more and cancels what it registered
+				cache.removeFromCache(newep);
 			}
+			// a resync is queued too, it re-asserts the registrations without any I/O
+			controller.enqueue(newep);
+		} else if (enabled) {
+			// the label was put on
+			add(newep);
 		}
 	}
 
-	@Override
-	public void onDelete(Endpoints ep, boolean deletedFinalStateUnknown) {
-		if (Util.isEnabledLabel(ep.getMetadata(), properties.getLabelEnabled())
-				&& cache.exists(ep)
-		) {
+	// whatever was registered goes, labeled or not: with server side filtering
+	// taking the label off also arrives as a delete
+	private void delete(T ep) {
+		if (cache.exists(ep)) {
 			logger.debug("Delete Endpoint Action -> {}", log(ep));
-			registrar.unregister(ep);
 			cache.removeFromCache(ep);
+			controller.enqueue(ep);
 		}
 	}
 
-	private String log(Endpoints ep) {
+	private String log(T ep) {
 		StringBuilder sb = new StringBuilder("name: "  + ep.getMetadata().getName());
 		sb.append(", namespace: " + ep.getMetadata().getNamespace());
 		sb.append(", uid: " + ep.getMetadata().getUid());
@@ -15,21 +15,53 @@
  */
 package io.agilehandy.k8s.endpoints;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
 
 import javax.annotation.PreDestroy;
 
-import io.fabric8.kubernetes.api.model.Endpoints;
+import io.agilehandy.k8s.common.InformerProperties;
+import io.agilehandy.k8s.eureka.Application;
+import io.agilehandy.k8s.leader.LeaderElection;
+import io.agilehandy.k8s.sharding.ShardMembership;
+import io.fabric8.kubernetes.api.model.Namespace;
+import io.fabric8.kubernetes.api.model.NamespaceList;
+import io.fabric8.kubernetes.client.HttpClientAware;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.dsl.base.OperationContext;
+import io.fabric8.kubernetes.client.informers.ResourceEventHandler;
 import io.fabric8.kubernetes.client.informers.SharedIndexInformer;
 import io.fabric8.kubernetes.client.informers.SharedInformerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.springframework.stereotype.Component;
 
 /**
+ * Watches the endpoints of the configured namespaces, each with an informer
+ * and a controller of its own: the namespaces listed in
+ * {@code eureka.k8s.proxy.namespaces}, the namespaces carrying the labels of
+ * {@code namespace-selector} as they come and go, or else the single
+ * {@code namespace}, possibly {@code all-namespaces}. With
+ * {@code endpoint-slices} the informers watch EndpointSlices instead.
+ *
+ * With leader election, a standby replica keeps its informers running but only
+ * prepares the instances, and reconciles them against the registry the moment
+ * it becomes leader.
+ *
  * @author Haytham Mohamed
  **/
 
@@ -39,54 +71,272 @@ public class EndpointsInformer {
 	private static Logger logger =
 			LoggerFactory.getLogger(EndpointsInformer.class);
 
-	private final EndpointsEventHandler handler;
-	private final SharedInformerFactory factory;
+	private static final long SYNC_POLL_MILLIS = 100;
+
+	private final KubernetesClient client;
+	private final EndpointsEureka registrar;
+	private final EndpointsCache cache;
+	private final RegistryReconciler reconciler;
+	private final ShardMembership sharding;
+	private final LeaderElection leadership;
+	private final Ownership ownership;
+	private final InformerProperties properties;
+	private final MeterRegistry meterRegistry;
 
-	private ExecutorService executorService;
+	// namespace -> its informer and controller
+	private final Map<String, EndpointsPartition<?>> partitions = new ConcurrentHashMap<>();
+	// every informer holds a thread for as long as it runs
+	private final ExecutorService informerExecutor;
+	private SharedInformerFactory namespaceFactory;
+	private boolean started;
+	private boolean stopped;
 
-	public EndpointsInformer(EndpointsEventHandler handler
-			, SharedInformerFactory factory) {
-		this.handler = handler;
-		this.factory = factory;
-		executorService = Executors.newSingleThreadExecutor();
+	private final AtomicBoolean ready = new AtomicBoolean();
+
+	public EndpointsInformer(KubernetesClient client
+			, EndpointsEureka registrar
+			, EndpointsCache cache
+			, RegistryReconciler reconciler
+			, ShardMembership sharding
+			, LeaderElection leadership
+			, InformerProperties properties
+			, MeterRegistry meterRegistry) {
+		this.client = client;
+		this.registrar = registrar;
+		this.cache = cache;
+		this.reconciler = reconciler;
+		this.sharding = sharding;
+		this.leadership = leadership;
+		this.ownership = new Ownership() {
+			@Override
+			public boolean owns(String key) {
+				return leadership.isLeader() && sharding.owns(key);
+			}
+
+			@Override
+			public boolean isStandby() {
+				return leadership.isStandby();
+			}
+		};
+		this.properties = properties;
+		this.meterRegistry = meterRegistry;
+		AtomicInteger count = new AtomicInteger();
+		this.informerExecutor = Executors.newCachedThreadPool(r -> {
+			Thread thread = new Thread(r, "ENDPOINTS_INFORMER_" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
 	}
 
 	@PreDestroy
 	public void destroy() {
 		logger.debug("Stopping all registered endpoints informers");
-		factory.stopAllRegisteredInformers();
-		executorService.shutdown();
+		ready.set(false);
+		synchronized (this) {
+			stopped = true;
+		}
+		if (namespaceFactory != null) {
+			namespaceFactory.stopAllRegisteredInformers(false);
+		}
+		partitions.values().forEach(EndpointsPartition::stop);
+		informerExecutor.shutdownNow();
 		logger.debug("All registered endpoints informers were stopped successfully!");
 	}
 
-	private void wait(SharedIndexInformer<Endpoints> informer) {
+	// wait until the informers listed their resources, at most the sync timeout
+	private boolean awaitSynced(Collection<BooleanSupplier> informers) {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(properties.getSyncTimeoutSeconds());
 		try {
-			executorService.submit(() -> {
-				Thread.currentThread().setName("HAS_SYNCED_THREAD");
-				try {
-					for (;;) {
-						logger.debug("informer.hasSynced() : {}", informer.hasSynced());
-						Thread.sleep(1000);
+			for (BooleanSupplier informer : informers) {
+				while (!informer.getAsBoolean()) {
+					if (System.nanoTime() - deadline >= 0) {
+						return false;
 					}
-				} catch (InterruptedException inEx) {
-					logger.debug("HAS_SYNCED_THREAD INTERRUPTED!");
+					Thread.sleep(SYNC_POLL_MILLIS);
 				}
-			});
-
-			// Wait for some time now
-			TimeUnit.MINUTES.sleep(1);
+			}
+			return true;
 		} catch (InterruptedException interruptedException) {
 			logger.debug("-> interrupted: {}", interruptedException.getMessage());
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	// reconcile every enabled endpoints object of the synced caches against the
+	// eureka registry in one pass, before the workers take over
+	private void reconcileAll(List<EndpointsPartition<?>> partitions) {
+		List<Application> owned = new ArrayList<>();
+		partitions.forEach(partition -> owned.addAll(partition.seed(ownership)));
+		logger.debug("Reconciling {} cached instances", owned.size());
+		reconciler.reconcile(owned, ownership);
+	}
+
+	// only get ready to take over, while another replica leads
+	private void prepareAll(List<EndpointsPartition<?>> partitions) {
+		List<Application> applications = new ArrayList<>();
+		partitions.forEach(partition -> applications.addAll(partition.applications()));
+		reconciler.prepare(applications);
+	}
+
+	// what the registration snapshot restored and this replica did not claim
+	private void releaseRestored(List<EndpointsPartition<?>> partitions) {
+		if (!reconciler.hasRestored()) {
+			return;
 		}
+		List<Application> applications = new ArrayList<>();
+		partitions.forEach(partition -> applications.addAll(partition.applications()));
+		reconciler.releaseRestored(applications);
+	}
+
+	public boolean isReady() {
+		return ready.get();
+	}
+
+	public Collection<String> getNamespaces() {
+		return Collections.unmodifiableSet(partitions.keySet());
 	}
 
 	public void run() {
-		SharedIndexInformer<Endpoints> informer =
-				factory.getExistingSharedIndexInformer(Endpoints.class);
-		informer.addEventHandler(handler);
-		logger.debug("Starting all registered endpoints informers");
-		factory.startAllRegisteredInformers();
-		wait(informer);
+		long start = System.currentTimeMillis();
+		sharding.addListener(this::rebalance);
+		leadership.addListener(this::leadershipChanged);
+		sharding.start();
+		if (properties.getNamespaceSelector().isEmpty()) {
+			namespaces().forEach(this::watch);
+		} else {
+			watchSelectedNamespaces();
+		}
+		List<EndpointsPartition<?>> initial;
+		synchronized (this) {
+			initial = new ArrayList<>(partitions.values());
+			logger.debug("Starting the endpoints informers of {} namespaces", initial.size());
+			initial.forEach(EndpointsPartition::start);
+			// namespaces selected from now on start on their own
+			started = true;
+		}
+		if (awaitSynced(initial.stream().map(partition -> (BooleanSupplier) partition::hasSynced)
+				.collect(Collectors.toList()))) {
+			logger.debug("Endpoints informers synced in {} ms", System.currentTimeMillis() - start);
+			if (leadership.isLeader()) {
+				reconcileAll(initial);
+			} else {
+				prepareAll(initial);
+			}
+			releaseRestored(initial);
+		} else {
+			logger.warn("Endpoints informers did not sync within {} seconds, relying on their resync"
+					, properties.getSyncTimeoutSeconds());
+		}
+		// events queued until now are reconciled against the seeded state
+		initial.forEach(partition -> partition.getController().start());
+		leadership.start();
+		ready.set(true);
 		logger.debug("All registered endpoints informers were started successfully!");
 	}
+
+	// the configured namespaces, null standing for all of them
+	private Collection<String> namespaces() {
+		if (!properties.getNamespaces().isEmpty()) {
+			return new LinkedHashSet<>(properties.getNamespaces());
+		}
+		return EndpointsPartition.ALL_NAMESPACES.equalsIgnoreCase(properties.getNamespace())
+				? Collections.singleton(null)
+				: Collections.singleton(properties.getNamespace());
+	}
+
+	private void watchSelectedNamespaces() {
+		logger.debug("Watching namespaces labeled with {}", properties.getNamespaceSelector());
+		namespaceFactory = client.informers(informerExecutor);
+		OperationContext context = new OperationContext()
+				.withOkhttpClient(((HttpClientAware) client).getHttpClient())
+				.withConfig(client.getConfiguration())
+				.withPlural("namespaces")
+				.withLabels(properties.getNamespaceSelector());
+		SharedIndexInformer<Namespace> informer = namespaceFactory.sharedIndexInformerFor(Namespace.class
+				, NamespaceList.class, context, properties.getWatcherInterval() * 1000L);
+		informer.addEventHandler(new ResourceEventHandler<Namespace>() {
+			@Override
+			public void onAdd(Namespace namespace) {
+				watch(namespace.getMetadata().getName());
+			}
+
+			@Override
+			public void onUpdate(Namespace oldNamespace, Namespace newNamespace) {
+			}
+
+			// also sent once a namespace no longer carries the selected labels
+			@Override
+			public void onDelete(Namespace namespace, boolean deletedFinalStateUnknown) {
+				unwatch(namespace.getMetadata().getName());
+			}
+		});
+		namespaceFactory.startAllRegisteredInformers();
+		if (!awaitSynced(Collections.singletonList(informer::hasSynced))) {
+			logger.warn("Namespaces did not sync within {} seconds, watching those selected so far"
+					, properties.getSyncTimeoutSeconds());
+		}
+	}
+
+	private synchronized void watch(String namespace) {
+		String name = namespace == null ? EndpointsPartition.ALL_NAMESPACES : namespace;
+		if (stopped || partitions.containsKey(name)) {
+			return;
+		}
+		EndpointsPartition<?> partition = properties.isEndpointSlices()
+				? EndpointsPartition.endpointSlices(namespace, client, informerExecutor
+						, registrar, cache, ownership, properties, meterRegistry)
+				: EndpointsPartition.endpoints(namespace, client, informerExecutor
+						, registrar, cache, ownership, properties, meterRegistry);
+		partitions.put(name, partition);
+		if (started) {
+			logger.info("Watching the endpoints of namespace {}", name);
+			partition.start();
+			partition.getController().start();
+		}
+	}
+
+	// the replicas sharing the endpoints changed
+	private void rebalance() {
+		partitions.values().forEach(partition -> partition.getController().resync());
+	}
+
+	// this replica took over from the leader, or lost the lead
+	private void leadershipChanged() {
+		List<EndpointsPartition<?>> current;
+		synchronized (this) {
+			if (stopped) {
+				return;
+			}
+			current = new ArrayList<>(partitions.values());
+		}
+		if (leadership.isLeader()) {
+			// what the previous leader registered is in the registry, so it is
+			// only tracked rather than registered again
+			long start = System.currentTimeMillis();
+			reconciler.refresh();
+			reconcileAll(current);
+			logger.info("Took over the endpoints of {} namespaces in {} ms", current.size()
+					, System.currentTimeMillis() - start);
+		} else {
+			rebalance();
+		}
+	}
+
+	private void unwatch(String namespace) {
+		EndpointsPartition<?> partition;
+		synchronized (this) {
+			partition = stopped ? null : partitions.remove(namespace);
+		}
+		if (partition == null) {
+			return;
+		}
+		logger.info("No longer watching the endpoints of namespace {}", namespace);
+		try {
+			partition.release();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
 }
@@ -16,19 +16,13 @@
 package io.agilehandy.k8s.endpoints;
 
 import io.agilehandy.k8s.common.InformerProperties;
-import io.fabric8.kubernetes.api.model.Endpoints;
-import io.fabric8.kubernetes.api.model.EndpointsList;
 import io.fabric8.kubernetes.client.Config;
 import io.fabric8.kubernetes.client.ConfigBuilder;
 import io.fabric8.kubernetes.client.DefaultKubernetesClient;
 import io.fabric8.kubernetes.client.KubernetesClient;
-import io.fabric8.kubernetes.client.informers.SharedIndexInformer;
-import io.fabric8.kubernetes.client.informers.SharedInformerFactory;
-import io.fabric8.kubernetes.client.informers.cache.Lister;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
@@ -56,24 +50,4 @@ public class EndpointsInformerConfiguration {
 		return new DefaultKubernetesClient(config);
 	}
 
-	@Bean
-	public SharedInformerFactory sharedInformerFactory(KubernetesClient client) {
-		SharedInformerFactory factory = client.informers();
-		factory.addSharedInformerEventListener(new EndpointsEventListener());
-		return factory;
-	}
-
-	@Bean(name="endpointsSharedInformer")
-	public SharedIndexInformer<Endpoints> serviceSharedIndexInformer(InformerProperties properties,
-			SharedInformerFactory factory) {
-		return factory.sharedIndexInformerFor(Endpoints.class, EndpointsList.class
-				, properties.getWatcherInterval() * 1000L);
-	}
-
-	@Bean(name="endpointsLister")
-	public Lister<Endpoints> serviceLister(@Qualifier("endpointsSharedInformer") SharedIndexInformer<Endpoints> informer
-			, KubernetesClient client) {
-		return new Lister(informer.getIndexer(), client.getNamespace());
-	}
-
 }
@@ -0,0 +1,218 @@
+/*
+ * Copyright 2012-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.agilehandy.k8s.endpoints;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.stream.Collectors;
+
+import io.agilehandy.k8s.common.InformerProperties;
+import io.agilehandy.k8s.common.Util;
+import io.agilehandy.k8s.eureka.Application;
+import io.fabric8.kubernetes.api.model.Endpoints;
+import io.fabric8.kubernetes.api.model.EndpointsList;
+import io.fabric8.kubernetes.api.model.HasMetadata;
+import io.fabric8.kubernetes.api.model.discovery.EndpointSlice;
+import io.fabric8.kubernetes.api.model.discovery.EndpointSliceList;
+import io.fabric8.kubernetes.client.HttpClientAware;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.dsl.base.OperationContext;
+import io.fabric8.kubernetes.client.informers.SharedIndexInformer;
+import io.fabric8.kubernetes.client.informers.SharedInformerFactory;
+import io.fabric8.kubernetes.client.informers.cache.Lister;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The informer, event handler and controller of one watched namespace, or of
+ * the whole cluster when the namespace is {@code null}, over core/v1 Endpoints
+ * or over discovery.k8s.io EndpointSlices.
+ *
+ * @author Haytham Mohamed
+ **/
+
+class EndpointsPartition<T extends HasMetadata> {
+
+	private static Logger logger = LoggerFactory.getLogger(EndpointsPartition.class);
+
+	static final String ALL_NAMESPACES = "all-namespaces";
+
+	static final String DISCOVERY_GROUP = "discovery.k8s.io";
+	static final String DISCOVERY_VERSION = "v1beta1";
+
+	private final String name;
+	private final SharedInformerFactory factory;
+	private final SharedIndexInformer<T> informer;
+	private final Lister<T> lister;
+	private final EndpointsController<T> controller;
+	private final EndpointsEventHandler<T> handler;
+	private final EndpointsCache cache;
+	private final InformerProperties properties;
+
+	private EndpointsPartition(String name
+			, SharedInformerFactory factory
+			, SharedIndexInformer<T> informer
+			, String namespace
+			, EndpointsEureka registrar
+			, EndpointsSource<T> source
+			, EndpointsCache cache
+			, Ownership ownership
+			, InformerProperties properties
+			, MeterRegistry meterRegistry) {
+		this.name = name;
+		this.factory = factory;
+		this.informer = informer;
+		this.cache = cache;
+		this.properties = properties;
+		this.lister = new Lister<>(informer.getIndexer(), namespace);
+		this.controller = new EndpointsController<>(name, registrar, lister, source, ownership
+				, properties, meterRegistry);
+		this.handler = new EndpointsEventHandler<>(controller, properties, cache, meterRegistry);
+	}
+
+	static EndpointsPartition<Endpoints> endpoints(String namespace
+			, KubernetesClient client
+			, ExecutorService informerExecutor
+			, EndpointsEureka registrar
+			, EndpointsCache cache
+			, Ownership ownership
+			, InformerProperties properties
+			, MeterRegistry meterRegistry) {
+		// the factory keeps one informer per type, hence one factory per namespace
+		SharedInformerFactory factory = factory(client, informerExecutor);
+		SharedIndexInformer<Endpoints> informer = factory.sharedIndexInformerFor(Endpoints.class, EndpointsList.class
+				, context(client, namespace, properties).withPlural("endpoints")
+				, properties.getWatcherInterval() * 1000L);
+		return new EndpointsPartition<>(name(namespace), factory, informer, namespace, registrar
+				, registrar::getRegisteredApplications, cache, ownership, properties, meterRegistry);
+	}
+
+	static EndpointsPartition<EndpointSlice> endpointSlices(String namespace
+			, KubernetesClient client
+			, ExecutorService informerExecutor
+			, EndpointsEureka registrar
+			, EndpointsCache cache
+			, Ownership ownership
+			, InformerProperties properties
+			, MeterRegistry meterRegistry) {
+		SharedInformerFactory factory = factory(client, informerExecutor);
+		// the client has no endpoint slice operations of its own for this group
+		SharedIndexInformer<EndpointSlice> informer = factory.sharedIndexInformerFor(EndpointSlice.class
+				, EndpointSliceList.class
+				, context(client, namespace, properties)
+						.withApiGroupName(DISCOVERY_GROUP)
+						.withApiGroupVersion(DISCOVERY_VERSION)
+						.withPlural("endpointslices")
+				, properties.getWatcherInterval() * 1000L);
+		return new EndpointsPartition<>(name(namespace), factory, informer, namespace, registrar
+				, new EndpointSlices(informer, registrar), cache, ownership, properties, meterRegistry);
+	}
+
+	private static String name(String namespace) {
+		return namespace == null ? ALL_NAMESPACES : namespace;
+	}
+
+	private static SharedInformerFactory factory(KubernetesClient client, ExecutorService informerExecutor) {
+		SharedInformerFactory factory = client.informers(informerExecutor);
+		factory.addSharedInformerEventListener(new EndpointsEventListener());
+		return factory;
+	}
+
+	private static OperationContext context(KubernetesClient client, String namespace
+			, InformerProperties properties) {
+		OperationContext context = new OperationContext()
+				.withOkhttpClient(((HttpClientAware) client).getHttpClient())
+				.withConfig(client.getConfiguration())
+				.withNamespace(namespace);
+		if (properties.isServerSideFiltering()) {
+			// let the API server drop endpoints without the enabled label, so they are
+			// neither streamed nor held in the informer cache; a null value selects on
+			// the label existing, the value is matched by the event handler in any case
+			context = context.withLabels(Collections.singletonMap(properties.getLabelEnabled(), null));
+		}
+		return context;
+	}
+
+	String getName() {
+		return name;
+	}
+
+	EndpointsController<T> getController() {
+		return controller;
+	}
+
+	void start() {
+		logger.debug("Starting the endpoints informer of {}", name);
+		informer.addEventHandler(handler);
+		factory.startAllRegisteredInformers();
+	}
+
+	boolean hasSynced() {
+		return informer.hasSynced();
+	}
+
+	List<T> list() {
+		return lister.list();
+	}
+
+	/**
+	 * The applications of the enabled objects in the cache that this replica
+	 * owns, which the controller takes as registered from now on.
+	 */
+	List<Application> seed(Ownership ownership) {
+		List<T> owned = enabled().stream()
+				.filter(ep -> ownership.owns(controller.shardKey(ep)))
+				.collect(Collectors.toList());
+		return controller.seed(owned);
+	}
+
+	/**
+	 * The applications of all the enabled objects in the cache.
+	 */
+	List<Application> applications() {
+		return enabled().stream()
+				.flatMap(ep -> controller.desired(ep).stream())
+				.collect(Collectors.toList());
+	}
+
+	private List<T> enabled() {
+		List<T> enabled = list().stream()
+				.filter(ep -> Util.isEnabledLabel(ep.getMetadata(), properties.getLabelEnabled()))
+				.collect(Collectors.toList());
+		enabled.forEach(cache::addToCache);
+		return enabled;
+	}
+
+	void stop() {
+		logger.debug("Stopping the endpoints informer of {}", name);
+		controller.stop();
+		// the executor is shared with the other namespaces
+		factory.stopAllRegisteredInformers(false);
+	}
+
+	/**
+	 * Stop watching and cancel the registrations of the namespace, which is no
+	 * longer to be watched.
+	 */
+	void release() throws InterruptedException {
+		stop();
+		list().forEach(cache::removeFromCache);
+		controller.release();
+	}
+
+}
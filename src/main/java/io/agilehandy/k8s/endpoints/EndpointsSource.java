@@ -0,0 +1,58 @@
+/*
+ * Copyright 2012-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.agilehandy.k8s.endpoints;
+
+import java.util.Collections;
+import java.util.List;
+
+import io.agilehandy.k8s.eureka.Application;
+import io.fabric8.kubernetes.api.model.HasMetadata;
+import io.fabric8.kubernetes.client.informers.cache.Cache;
+
+/**
+ * How the addresses of a service are read from one kind of resource: core/v1
+ * Endpoints, a single object per service, or discovery.k8s.io EndpointSlices,
+ * any number of them per service.
+ *
+ * @author Haytham Mohamed
+ **/
+
+@FunctionalInterface
+public interface EndpointsSource<T extends HasMetadata> {
+
+	/**
+	 * The applications of an object that should be registered with Eureka.
+	 */
+	List<Application> getApplications(T resource);
+
+	/**
+	 * The namespace/name key of the service of an object, which replicas shard
+	 * on so that all the objects of a service have the same owner.
+	 */
+	default String getShardKey(T resource) {
+		return Cache.metaNamespaceKeyFunc(resource);
+	}
+
+	/**
+	 * The namespace/name keys of the other objects of the same service that
+	 * hold this application too, so it is not cancelled while one of them
+	 * still does.
+	 */
+	default List<String> getOtherKeys(String key, Application application) {
+		return Collections.emptyList();
+	}
+
+}
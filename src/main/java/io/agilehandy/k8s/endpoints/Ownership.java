@@ -0,0 +1,41 @@
+/*
+ * Copyright 2012-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.agilehandy.k8s.endpoints;
+
+/**
+ * Decides which endpoints objects this replica registers and heartbeats.
+ *
+ * @author Haytham Mohamed
+ **/
+
+@FunctionalInterface
+public interface Ownership {
+
+	/**
+	 * Whether this replica is in charge of the endpoints of the service with
+	 * this namespace/name key.
+	 */
+	boolean owns(String key);
+
+	/**
+	 * Whether this replica stands by to take over from the leader, and so
+	 * prepares the instances it does not own yet.
+	 */
+	default boolean isStandby() {
+		return false;
+	}
+
+}
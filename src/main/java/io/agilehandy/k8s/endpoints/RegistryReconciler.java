@@ -0,0 +1,213 @@
+/*
+ * Copyright 2012-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.agilehandy.k8s.endpoints;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+import io.agilehandy.k8s.common.InformerProperties;
+import io.agilehandy.k8s.eureka.Application;
+import io.agilehandy.k8s.eureka.Eureka;
+import io.agilehandy.k8s.eureka.Registration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.stereotype.Component;
+
+/**
+ * Reconciles the informer cache against one snapshot of the Eureka registry
+ * at startup, so that a restarted controller only sends the registrations and
+ * cancellations that are actually missing.
+ *
+ * @author Haytham Mohamed
+ **/
+
+@Component
+public class RegistryReconciler {
+
+	private static Logger logger = LoggerFactory.getLogger(RegistryReconciler.class);
+
+	private final Eureka lite;
+	private final EndpointsEureka registrar;
+	private final InformerProperties properties;
+
+	public RegistryReconciler(Eureka lite, EndpointsEureka registrar, InformerProperties properties) {
+		this.lite = lite;
+		this.registrar = registrar;
+		this.properties = properties;
+	}
+
+	/**
+	 * Register what is missing of the applications of the endpoints this
+	 * replica owns, and cancel the instances the controller registered for
+	 * endpoints of this replica that no longer exist.
+	 */
+	public void reconcile(Collection<Application> applications, Ownership ownership) {
+		Map<String, Application> desired = desired(applications);
+
+		Map<String, List<Registration>> snapshot;
+		try {
+			snapshot = lite.getApplications();
+		} catch (Exception e) {
+			logger.warn("Could not fetch the eureka registry, leaving registration to the heartbeats: {}"
+					, e.getMessage());
+			desired.values().forEach(registrar::track);
+			return;
+		}
+
+		Map<String, Application> registered = new HashMap<>();
+		// what the controller registered, the rest belongs to other clients
+		Set<String> managed = new HashSet<>();
+		snapshot.values().forEach(registrations -> registrations.forEach(registration -> {
+			String key = key(registration.getApplication());
+			registered.put(key, registration.getApplication());
+			if (Eureka.isManaged(registration)) {
+				managed.add(key);
+			}
+		}));
+
+		List<Application> toRegister = new ArrayList<>();
+		List<Application> toUpdate = new ArrayList<>();
+		desired.forEach((key, app) -> {
+			Application existing = registered.get(key);
+			if (existing != null && existing.getPort() == app.getPort()
+					&& app.getHostname().equals(existing.getHostname())) {
+				Application settled = EndpointsDiff.settle(existing, app);
+				if (settled.getStatus() != existing.getStatus()) {
+					toUpdate.add(settled);
+				} else {
+					registrar.track(settled);
+				}
+			} else {
+				toRegister.add(app);
+			}
+		});
+
+		// only instances the controller registered, for endpoints this replica
+		// owns, are orphans: a eureka client registering under the same name, the
+		// endpoints of another replica and a same-named service of another
+		// namespace are left alone. Without their namespace, instances registered
+		// by an older controller are left to expire.
+		List<Application> toCancel = new ArrayList<>();
+		registered.forEach((key, app) -> {
+			if (!desired.containsKey(key) && managed.contains(key) && app.getNamespace() != null
+					&& ownership.owns(shardKey(app))) {
+				toCancel.add(app);
+			}
+		});
+
+		logger.info("Startup reconciliation: {} desired, {} already registered, {} to register, {} to update"
+				+ ", {} to cancel", desired.size(), desired.size() - toRegister.size() - toUpdate.size()
+				, toRegister.size(), toUpdate.size(), toCancel.size());
+		inBatches(toRegister, registrar::register);
+		inBatches(toUpdate, registrar::updateStatus);
+		inBatches(toCancel, registrar::cancel);
+	}
+
+	/**
+	 * Get ready to take over from the leader without sending anything: fetch
+	 * the registry, which is kept current from then on, and build the instance
+	 * infos, so the reconciliation on taking over runs from memory.
+	 */
+	public void prepare(Collection<Application> applications) {
+		Map<String, Application> desired = desired(applications);
+		desired.values().forEach(registrar::prepare);
+		try {
+			lite.getApplications();
+		} catch (Exception e) {
+			logger.warn("Could not fetch the eureka registry: {}", e.getMessage());
+		}
+		logger.info("Standing by with {} instances prepared", desired.size());
+	}
+
+	/**
+	 * Release the instances restored from the registration snapshot that the
+	 * startup reconciliation did not claim: those of the cached applications
+	 * belong to another replica and are only no longer renewed, the rest were
+	 * left behind by the previous run and are cancelled.
+	 */
+	public void releaseRestored(Collection<Application> applications) {
+		Map<String, Application> desired = desired(applications);
+		List<Application> orphans = new ArrayList<>();
+		int handedOver = 0;
+		for (Application app : registrar.takeRestored()) {
+			if (desired.containsKey(key(app))) {
+				registrar.untrack(app);
+				handedOver++;
+			} else {
+				orphans.add(app);
+			}
+		}
+		logger.info("Restored instances: {} left to other replicas, {} orphans to cancel", handedOver, orphans.size());
+		inBatches(orphans, registrar::cancel);
+	}
+
+	public boolean hasRestored() {
+		return registrar.hasRestored();
+	}
+
+	/**
+	 * Catch up with the registrations made since the registry was last
+	 * refreshed, e.g. by the leader this replica takes over from.
+	 */
+	public void refresh() {
+		try {
+			lite.refreshRegistry();
+		} catch (Exception e) {
+			logger.warn("Could not refresh the eureka registry: {}", e.getMessage());
+		}
+	}
+
+	private Map<String, Application> desired(Collection<Application> applications) {
+		Map<String, Application> desired = new HashMap<>();
+		applications.forEach(app -> desired.put(key(app), app));
+		return desired;
+	}
+
+	// eureka upper-cases application names
+	private String key(Application app) {
+		return app.getName().toUpperCase(Locale.ROOT) + ":" + app.getInstance_id();
+	}
+
+	// the namespace/name key of the endpoints, from the name eureka upper-cased;
+	// kubernetes service names are lower case
+	private String shardKey(Application app) {
+		return app.getNamespace() + "/" + app.getName().toLowerCase(Locale.ROOT);
+	}
+
+	// keep at most one batch queued on the eureka request executor at a time
+	private void inBatches(List<Application> applications, Function<Application, CompletableFuture<?>> action) {
+		int batchSize = Math.max(1, properties.getReconcileBatchSize());
+		for (int from = 0; from < applications.size(); from += batchSize) {
+			List<Application> batch = applications.subList(from, Math.min(from + batchSize, applications.size()));
+			CompletableFuture<?>[] requests = batch.stream().map(action).toArray(CompletableFuture[]::new);
+			try {
+				CompletableFuture.allOf(requests).join();
+			} catch (Exception e) {
+				logger.debug("Some requests of the reconciliation batch failed: {}", e.getMessage());
+			}
+		}
+	}
+
+}
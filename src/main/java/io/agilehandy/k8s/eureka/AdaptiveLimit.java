@@ -0,0 +1,69 @@
+package io.agilehandy.k8s.eureka;
+
+/**
+ * Concurrency limit of the requests to Eureka, adapted to the latency they
+ * are answered with: additive increase while the round trips stay close to
+ * their long-term average, multiplicative decrease once they grow well above
+ * it or a request gets no answer at all. A struggling Eureka thus gets fewer
+ * concurrent requests, and a recovering one is ramped back up instead of
+ * being hit with the whole backlog at once.
+ *
+ * @author Haytham Mohamed
+ */
+class AdaptiveLimit {
+
+	// a round trip this many times the average counts as congestion
+	private static final double TOLERANCE = 2.0;
+	// weight of a new round trip in the average
+	private static final double SMOOTHING = 0.05;
+	private static final double BACKOFF = 0.9;
+
+	private final int min;
+	private final int max;
+	private final boolean adaptive;
+
+	private double limit;
+	private double averageNanos;
+
+	/**
+	 * @param adaptive false to keep the limit at {@code max}
+	 */
+	AdaptiveLimit(int min, int max, boolean adaptive) {
+		this.min = Math.max(1, min);
+		this.max = Math.max(this.min, max);
+		this.adaptive = adaptive;
+		this.limit = this.max;
+	}
+
+	synchronized int get() {
+		return (int) limit;
+	}
+
+	/**
+	 * A request answered after this round trip.
+	 */
+	synchronized void succeeded(long rttNanos) {
+		if (!adaptive) {
+			return;
+		}
+		if (averageNanos == 0) {
+			averageNanos = rttNanos;
+		}
+		if (rttNanos > averageNanos * TOLERANCE) {
+			limit = Math.max(min, limit * BACKOFF);
+		} else {
+			limit = Math.min(max, limit + 1 / limit);
+		}
+		averageNanos += (rttNanos - averageNanos) * SMOOTHING;
+	}
+
+	/**
+	 * A request got no answer, it failed at the transport level or timed out.
+	 */
+	synchronized void failed() {
+		if (adaptive) {
+			limit = Math.max(min, limit * BACKOFF);
+		}
+	}
+
+}
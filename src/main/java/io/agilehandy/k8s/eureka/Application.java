@@ -5,6 +5,7 @@ import javax.validation.constraints.Min;
 import javax.validation.constraints.NotBlank;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.netflix.appinfo.InstanceInfo.InstanceStatus;
 
 
 /**
@@ -22,6 +23,10 @@ public class Application {
 	@Min(0)
 	@Max(65535)
 	private int port;
+	// what eureka clients are told of the instance, e.g. STARTING until its pod is ready
+	private InstanceStatus status = InstanceStatus.UP;
+	// of the endpoints the instance comes from, null when it is not known
+	private String namespace;
 
 	public Application(String name, String instance_id, String hostname, int port) {
 		this.name = name;
@@ -30,6 +35,17 @@ public class Application {
 		this.port = port;
 	}
 
+	public Application(String name, String instance_id, String hostname, int port, InstanceStatus status) {
+		this(name, instance_id, hostname, port);
+		this.status = status;
+	}
+
+	public Application(String name, String instance_id, String hostname, int port, InstanceStatus status
+			, String namespace) {
+		this(name, instance_id, hostname, port, status);
+		this.namespace = namespace;
+	}
+
 	public Application() {
 	}
 
@@ -50,6 +66,18 @@ public class Application {
 		return port;
 	}
 
+	public InstanceStatus getStatus() {
+		return status;
+	}
+
+	public String getNamespace() {
+		return namespace;
+	}
+
+	public Application withStatus(InstanceStatus status) {
+		return new Application(name, instance_id, hostname, port, status, namespace);
+	}
+
 	@JsonIgnore
 	public String getRegistrationKey() {
 		return computeRegistrationKey(name, instance_id);
@@ -0,0 +1,113 @@
+package io.agilehandy.k8s.eureka;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stops requests to Eureka once it keeps failing, instead of sending every
+ * heartbeat and registration into the outage.
+ *
+ * The breaker opens after a number of consecutive failed requests. While it
+ * is open no request is let through; once the pause is over a single probe
+ * is, and its outcome closes the breaker or opens it again for twice as long,
+ * up to the maximum pause.
+ *
+ * @author Haytham Mohamed
+ */
+class CircuitBreaker {
+
+	private static Logger logger = LoggerFactory.getLogger(CircuitBreaker.class);
+
+	enum State { CLOSED, OPEN, HALF_OPEN }
+
+	private final int failureThreshold;
+	private final long openMillis;
+	private final long maxOpenMillis;
+
+	private State state = State.CLOSED;
+	private int failures;
+	private long pauseMillis;
+	private long openUntil;
+	private boolean probing;
+
+	/**
+	 * @param failureThreshold consecutive failures opening the breaker, 0 to never open it
+	 */
+	CircuitBreaker(int failureThreshold, long openMillis, long maxOpenMillis) {
+		this.failureThreshold = failureThreshold;
+		this.openMillis = Math.max(1, openMillis);
+		this.maxOpenMillis = Math.max(this.openMillis, maxOpenMillis);
+		this.pauseMillis = this.openMillis;
+	}
+
+	synchronized State getState() {
+		return state;
+	}
+
+	/**
+	 * Whether requests are refused outright, until a probe succeeded.
+	 */
+	synchronized boolean isOpen() {
+		return state != State.CLOSED;
+	}
+
+	/**
+	 * Whether a request may be sent now. Once the pause is over only the
+	 * first caller gets through, as the probe, until {@link #probed()}.
+	 */
+	synchronized boolean tryAcquire() {
+		switch (state) {
+			case CLOSED:
+				return true;
+			case OPEN:
+				if (System.currentTimeMillis() < openUntil) {
+					return false;
+				}
+				state = State.HALF_OPEN;
+				probing = true;
+				return true;
+			default:
+				if (probing) {
+					return false;
+				}
+				probing = true;
+				return true;
+		}
+	}
+
+	/**
+	 * The probe let through by {@link #tryAcquire()} has run; if it never
+	 * reached Eureka, the next request becomes the probe instead.
+	 */
+	synchronized void probed() {
+		probing = false;
+	}
+
+	synchronized void succeeded() {
+		failures = 0;
+		if (state != State.CLOSED) {
+			logger.info("Eureka answers again, resuming requests");
+			state = State.CLOSED;
+			pauseMillis = openMillis;
+		}
+	}
+
+	synchronized void failed(String reason) {
+		failures++;
+		if (state == State.HALF_OPEN) {
+			pauseMillis = Math.min(maxOpenMillis, pauseMillis * 2);
+			open();
+			logger.debug("Eureka probe failed, pausing requests for {} ms: {}", pauseMillis, reason);
+		} else if (state == State.CLOSED && failureThreshold > 0 && failures >= failureThreshold) {
+			open();
+			logger.warn("Pausing eureka requests for {} ms after {} consecutive failures, last: {}"
+					, pauseMillis, failures, reason);
+		}
+	}
+
+	private void open() {
+		state = State.OPEN;
+		openUntil = System.currentTimeMillis() + pauseMillis;
+	}
+
+}
@@ -5,9 +5,22 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.netflix.appinfo.InstanceInfo;
 import com.netflix.discovery.shared.Applications;
 import com.netflix.discovery.shared.resolver.ClosableResolver;
@@ -23,11 +36,13 @@ import com.netflix.discovery.shared.transport.TransportClientFactory;
 import com.netflix.discovery.shared.transport.decorator.MetricsCollectingEurekaHttpClient;
 import com.netflix.discovery.shared.transport.jersey.JerseyEurekaHttpClientFactory;
 import com.sun.jersey.api.client.filter.ClientFilter;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import org.springframework.beans.BeansException;
 import org.springframework.cloud.commons.util.InetUtils;
+import org.springframework.cloud.commons.util.InetUtilsProperties;
 import org.springframework.cloud.netflix.eureka.CloudEurekaClient;
 import org.springframework.cloud.netflix.eureka.EurekaClientConfigBean;
 import org.springframework.cloud.netflix.eureka.EurekaInstanceConfigBean;
@@ -43,18 +58,187 @@ public class Eureka implements ApplicationContextAware {
 
 	private static Logger logger = LoggerFactory.getLogger(Eureka.class);
 
+	// metadata marking the instances registered by the controller, as opposed
+	// to real eureka clients or others registering under the same name
+	public static final String MANAGED_BY_METADATA = "managed-by";
+	public static final String MANAGED_BY = "spring-cloud-k8s-eureka-controller";
+	public static final String NAMESPACE_METADATA = "k8s-namespace";
+
 	private InetUtils inetUtils;
 	private CloudEurekaClient eurekaClient;
 	private ApplicationContext context;
 	private EurekaClientConfigBean clientConfig;
-	private EurekaTransport transport;
+	private volatile EurekaTransport transport;
+	// registrations, heartbeats and cancellations spread over the peers, if there are several
+	private final EurekaPeers peers;
+	private EurekaRequestExecutor requests;
+	private final CircuitBreaker breaker;
+	private final AdaptiveLimit limit;
+	private EurekaRegistryMirror registry;
+	private final MeterRegistry meterRegistry;
+	private final int transportRebuildThreshold;
+	private final AtomicInteger transportFailures = new AtomicInteger();
+
+	// registration key -> instance info built for the application's current address
+	private final Cache<String, CachedInstanceInfo> instanceInfos = Caffeine.newBuilder()
+			.expireAfterAccess(1, TimeUnit.HOURS)
+			.build();
+
+	public Eureka(InetUtils inetUtils, CloudEurekaClient eurekaClient, EurekaClientConfigBean clientConfig
+			, EurekaLiteProperties properties, MeterRegistry meterRegistry) {
+		this(inetUtils, eurekaClient, clientConfig, properties, meterRegistry, properties.getCircuitMaxOpenSeconds());
+	}
 
-	public Eureka(InetUtils inetUtils, CloudEurekaClient eurekaClient, EurekaClientConfigBean clientConfig) {
-		this.inetUtils = inetUtils;
+	/**
+	 * Pauses between the probes of an open circuit last {@code circuitMaxOpenSeconds}
+	 * at most, in place of the configured longest pause.
+	 */
+	public Eureka(InetUtils inetUtils, CloudEurekaClient eurekaClient, EurekaClientConfigBean clientConfig
+			, EurekaLiteProperties properties, MeterRegistry meterRegistry, int circuitMaxOpenSeconds) {
+		this.inetUtils = new ResolvedInetUtils(inetUtils);
 		this.eurekaClient = eurekaClient;
 		this.clientConfig = clientConfig;
 		this.clientConfig.setRegisterWithEureka(false); // turn off registering with eureka, let apps send heartbeats.
 		this.transport = createTransport();
+		this.peers = createPeers(properties);
+		this.transportRebuildThreshold = properties.getTransportRebuildThreshold();
+		this.breaker = new CircuitBreaker(properties.getCircuitFailureThreshold()
+				, TimeUnit.SECONDS.toMillis(Math.min(properties.getCircuitOpenSeconds(), circuitMaxOpenSeconds))
+				, TimeUnit.SECONDS.toMillis(circuitMaxOpenSeconds));
+		this.limit = new AdaptiveLimit(1, properties.getMaxInFlightRequests(), properties.isAdaptiveConcurrency());
+		this.requests = new EurekaRequestExecutor(properties.getMaxInFlightRequests(), properties.getRequestTimeoutMillis()
+				, breaker, limit, createThreadsPerRequest(properties));
+		this.registry = new EurekaRegistryMirror(this::client, clientConfig.getRegistryFetchIntervalSeconds());
+		this.meterRegistry = meterRegistry;
+		meterRegistry.gauge("eureka.controller.requests.in-flight", requests, EurekaRequestExecutor::getInFlight);
+		meterRegistry.gauge("eureka.controller.requests.queued", requests, EurekaRequestExecutor::getQueued);
+		meterRegistry.gauge("eureka.controller.requests.limit", requests, EurekaRequestExecutor::getLimit);
+		meterRegistry.gauge("eureka.controller.circuit.open", requests, r -> r.isCircuitOpen() ? 1 : 0);
+		if (peers != null) {
+			meterRegistry.gauge("eureka.controller.peers.healthy", peers, EurekaPeers::getHealthy);
+		}
+	}
+
+	private ThreadFactory createThreadsPerRequest(EurekaLiteProperties properties) {
+		if (!properties.isVirtualThreads()) {
+			return null;
+		}
+		ThreadFactory virtualThreads = EurekaRequestExecutor.virtualThreadFactory("EUREKA_REQUEST_");
+		if (virtualThreads == null) {
+			logger.warn("Virtual threads need Java 21 or later, running eureka requests on {} platform threads"
+					, properties.getMaxInFlightRequests());
+		} else {
+			logger.info("Running eureka requests on virtual threads, at most {} at a time"
+					, properties.getMaxInFlightRequests());
+		}
+		return virtualThreads;
+	}
+
+	private EurekaPeers createPeers(EurekaLiteProperties properties) {
+		List<String> serviceUrls = clientConfig.getEurekaServerServiceUrls(EurekaClientConfigBean.DEFAULT_ZONE);
+		if (!properties.isPeerRouting() || serviceUrls.size() < 2) {
+			return null;
+		}
+		logger.info("Routing registrations to eureka peers {}", serviceUrls);
+		return new EurekaPeers(serviceUrls
+				, () -> newTransportClientFactory(clientConfig, Collections.<ClientFilter>emptyList())
+				, properties.getPeerFailureThreshold()
+				, TimeUnit.SECONDS.toMillis(properties.getPeerQuarantineSeconds()));
+	}
+
+	public EurekaRequestExecutor getRequestExecutor() {
+		return requests;
+	}
+
+	/**
+	 * Release the request executor and the transport, called once when the
+	 * application context closes. The transport is shared by all registrations
+	 * and lives as long as this instance.
+	 */
+	public void shutdown() {
+		logger.debug("Shutting down eureka lite transport");
+		this.registry.shutdown();
+		this.requests.shutdown();
+		this.transport.shutdown();
+		if (this.peers != null) {
+			this.peers.shutdown();
+		}
+	}
+
+	private EurekaHttpClient client() {
+		return this.transport.getEurekaHttpClient();
+	}
+
+	/**
+	 * Send a request about an instance, to its peer if there are several,
+	 * and feed its outcome to the circuit breaker and the concurrency limit.
+	 */
+	private <T> EurekaHttpResponse<T> send(String appName, String instanceId
+			, Function<EurekaHttpClient, EurekaHttpResponse<T>> request) {
+		long start = System.nanoTime();
+		EurekaHttpResponse<T> response;
+		try {
+			response = exchange(appName, instanceId, request);
+		} catch (RuntimeException e) {
+			breaker.failed(e.getMessage());
+			limitFailed();
+			throw e;
+		}
+		if (response.getStatusCode() >= 500) {
+			breaker.failed("status " + response.getStatusCode());
+			limitFailed();
+		} else {
+			breaker.succeeded();
+			// a timed out request was counted as failed when it timed out
+			if (!EurekaRequestExecutor.timedOut()) {
+				limit.succeeded(System.nanoTime() - start);
+			}
+		}
+		return response;
+	}
+
+	private void limitFailed() {
+		if (!EurekaRequestExecutor.timedOut()) {
+			limit.failed();
+		}
+	}
+
+	private <T> EurekaHttpResponse<T> exchange(String appName, String instanceId
+			, Function<EurekaHttpClient, EurekaHttpResponse<T>> request) {
+		if (peers != null) {
+			// instance infos hold the name in upper case, the applications may not
+			return peers.send(appName.toUpperCase(Locale.ROOT) + ":" + instanceId, request);
+		}
+		try {
+			EurekaHttpResponse<T> response = request.apply(client());
+			transportSucceeded();
+			return response;
+		} catch (RuntimeException e) {
+			transportFailed(e);
+			throw e;
+		}
+	}
+
+	private void transportSucceeded() {
+		transportFailures.set(0);
+	}
+
+	// replace the transport once requests keep failing at the transport level,
+	// e.g. a dead connection pool, instead of failing every later request
+	private void transportFailed(Exception e) {
+		if (transportRebuildThreshold > 0
+				&& transportFailures.incrementAndGet() >= transportRebuildThreshold) {
+			synchronized (this) {
+				if (transportFailures.get() >= transportRebuildThreshold) {
+					logger.warn("Rebuilding eureka transport after {} consecutive failures, last: {}"
+							, transportFailures.get(), e.getMessage());
+					EurekaTransport old = this.transport;
+					this.transport = createTransport();
+					transportFailures.set(0);
+					old.shutdown();
+				}
+			}
+		}
 	}
 
 	public InstanceInfo register(Application application) {
@@ -72,14 +256,50 @@ public class Eureka implements ApplicationContextAware {
 
 	public InstanceInfo getInstanceInfo(Registration registration) {
 		InstanceInfo instanceInfo = getInstanceInfo(registration.getApplication());
-		instanceInfo = new InstanceInfo.Builder(instanceInfo)
+		// copy, the cached instance info is shared with the heartbeats
+		instanceInfo = new InstanceInfo.Builder(new InstanceInfo(instanceInfo))
 				.setLastDirtyTimestamp(registration.getInstance().getLastDirtyTimestamp())
 				.setLastUpdatedTimestamp(registration.getInstance().getLastUpdatedTimestamp())
 				.build();
 		return instanceInfo;
 	}
 
+	/**
+	 * Return the instance info of an application, building it only the first
+	 * time or when the application's hostname or port changed.
+	 */
 	public InstanceInfo getInstanceInfo(Application application) {
+		String key = application.getRegistrationKey();
+		CachedInstanceInfo cached = instanceInfos.getIfPresent(key);
+		if (cached == null || !cached.matches(application)) {
+			cached = new CachedInstanceInfo(application, createInstanceInfo(application));
+			instanceInfos.put(key, cached);
+		} else if (cached.instanceInfo.getStatus() != application.getStatus()) {
+			// not dirty, or the next heartbeat would be answered with a 404
+			// and the instance registered all over again
+			cached.instanceInfo.setStatusWithoutDirty(application.getStatus());
+		}
+		return cached.instanceInfo;
+	}
+
+	/**
+	 * Build the instance info of an application registered by a previous run,
+	 * with the dirty timestamp eureka holds for it: a later one makes eureka
+	 * answer the next heartbeat with a 404, and the instance is registered again.
+	 */
+	public InstanceInfo restoreInstanceInfo(Application application, long lastDirtyTimestamp) {
+		InstanceInfo instanceInfo = getInstanceInfo(application);
+		if (lastDirtyTimestamp > 0) {
+			instanceInfo.setLastDirtyTimestamp(lastDirtyTimestamp);
+		}
+		return instanceInfo;
+	}
+
+	public void evictInstanceInfo(String appName, String instanceId) {
+		instanceInfos.invalidate(Application.computeRegistrationKey(appName, instanceId));
+	}
+
+	protected InstanceInfo createInstanceInfo(Application application) {
 		EurekaInstanceConfigBean instanceConfig = new EurekaInstanceConfigBean(inetUtils);
 		instanceConfig.setInstanceEnabledOnit(true);
 		instanceConfig.setAppname(application.getName());
@@ -87,8 +307,14 @@ public class Eureka implements ApplicationContextAware {
 		instanceConfig.setInstanceId(application.getInstance_id());
 		instanceConfig.setHostname(application.getHostname());
 		instanceConfig.setNonSecurePort(application.getPort());
+		instanceConfig.getMetadataMap().put(MANAGED_BY_METADATA, MANAGED_BY);
+		if (application.getNamespace() != null) {
+			instanceConfig.getMetadataMap().put(NAMESPACE_METADATA, application.getNamespace());
+		}
 
-		return new InstanceInfoFactory().create(instanceConfig);
+		InstanceInfo instanceInfo = new InstanceInfoFactory().create(instanceConfig);
+		instanceInfo.setStatusWithoutDirty(application.getStatus());
+		return instanceInfo;
 	}
 
 	public EurekaTransport createTransport() {
@@ -156,21 +382,88 @@ public class Eureka implements ApplicationContextAware {
 		};
 	}
 
+	public CompletableFuture<Boolean> registerAsync(Application application) {
+		return timed("register", () -> register(getInstanceInfo(application)));
+	}
+
+	public CompletableFuture<Boolean> renewAsync(InstanceInfo instanceInfo) {
+		return timed("renew", () -> renew(instanceInfo));
+	}
+
+	/**
+	 * Renew ahead of the heartbeats whose lease expires later, waiting rather
+	 * than failing while eureka is unavailable. An instance eureka does not
+	 * know is registered again only while it is still wanted, not when the
+	 * heartbeat merely came after its cancellation.
+	 */
+	public CompletableFuture<Boolean> renewAsync(InstanceInfo instanceInfo, long leaseExpiresAt
+			, BooleanSupplier stillRegistered) {
+		return timed("renew", () -> renew(instanceInfo, stillRegistered), leaseExpiresAt);
+	}
+
+	public CompletableFuture<Boolean> cancelAsync(String appName, String instanceId) {
+		return timed("cancel", () -> cancel(appName, instanceId));
+	}
+
+	public CompletableFuture<Boolean> statusUpdateAsync(Application application) {
+		return timed("status", () -> statusUpdate(application));
+	}
+
+	// latency from submission to completion, so time queued behind other requests counts
+	private CompletableFuture<Boolean> timed(String operation, Callable<Boolean> call) {
+		return timed(operation, call, 0);
+	}
+
+	private CompletableFuture<Boolean> timed(String operation, Callable<Boolean> call, long deadline) {
+		long start = System.nanoTime();
+		CompletableFuture<Boolean> result = deadline > 0 ? requests.submit(call, deadline) : requests.submit(call);
+		return result.whenComplete((success, e) ->
+				meterRegistry.timer("eureka.controller.requests"
+						, "operation", operation, "outcome", outcome(success, e))
+						.record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+	}
+
+	private static String outcome(Boolean success, Throwable e) {
+		if (e instanceof CompletionException && e.getCause() != null) {
+			e = e.getCause();
+		}
+		if (e instanceof TimeoutException) {
+			return "timeout";
+		}
+		if (e instanceof RejectedExecutionException) {
+			return "rejected";
+		}
+		if (e != null) {
+			return "error";
+		}
+		return Boolean.TRUE.equals(success) ? "success" : "failure";
+	}
+
 	/**
 	 * Renew with the eureka service by making the appropriate REST call
 	 */
 	public boolean renew(InstanceInfo instanceInfo) {
+		return renew(instanceInfo, () -> true);
+	}
+
+	private boolean renew(InstanceInfo instanceInfo, BooleanSupplier stillRegistered) {
 		EurekaHttpResponse<InstanceInfo> httpResponse;
 		try {
-			httpResponse = this.transport.getEurekaHttpClient().sendHeartBeat(instanceInfo.getAppName(), instanceInfo.getId(), instanceInfo, null);
+			httpResponse = send(instanceInfo.getAppName(), instanceInfo.getId()
+					, client -> client.sendHeartBeat(instanceInfo.getAppName(), instanceInfo.getId(), instanceInfo, null));
 			logger.debug("EurekaLite_{}/{} - Heartbeat status: {}", instanceInfo.getAppName(), instanceInfo.getId(), httpResponse.getStatusCode());
 			if (httpResponse.getStatusCode() == HttpStatus.NOT_FOUND.value()) {
+				if (!stillRegistered.getAsBoolean()) {
+					logger.debug("EurekaLite_{}/{} - Cancelled while its heartbeat was sent", instanceInfo.getAppName(), instanceInfo.getId());
+					return false;
+				}
 				logger.info("EurekaLite_{}/{} - Re-registering apps/{}", instanceInfo.getAppName(), instanceInfo.getId(), instanceInfo.getAppName());
 				return register(instanceInfo);
 			}
 			return httpResponse.getStatusCode() == HttpStatus.OK.value();
 		} catch (Exception e) {
-			logger.error("EurekaLite_"+instanceInfo.getAppName()+"/"+ instanceInfo.getId() + " - was unable to send heartbeat!", e);
+			logger.warn("EurekaLite_{}/{} - was unable to send heartbeat: {}", instanceInfo.getAppName(), instanceInfo.getId(), e.getMessage());
+			logger.debug("Heartbeat failure", e);
 			return false;
 		}
 	}
@@ -182,9 +475,10 @@ public class Eureka implements ApplicationContextAware {
 		logger.info("EurekaLite_{}/{}: registering service...", instanceInfo.getAppName(), instanceInfo.getId());
 		EurekaHttpResponse<Void> httpResponse;
 		try {
-			httpResponse = this.transport.getEurekaHttpClient().register(instanceInfo);
+			httpResponse = send(instanceInfo.getAppName(), instanceInfo.getId(), client -> client.register(instanceInfo));
 		} catch (Exception e) {
-			logger.warn("EurekaLite_"+instanceInfo.getAppName()+"/"+ instanceInfo.getId() + " - registration failed " + e.getMessage(), e);
+			logger.warn("EurekaLite_{}/{} - registration failed: {}", instanceInfo.getAppName(), instanceInfo.getId(), e.getMessage());
+			logger.debug("Registration failure", e);
 			throw e;
 		}
 		if (logger.isInfoEnabled()) {
@@ -193,38 +487,87 @@ public class Eureka implements ApplicationContextAware {
 		return httpResponse.getStatusCode() == HttpStatus.NO_CONTENT.value();
 	}
 
-	public void cancel(String appName, String instanceId) {
+	/**
+	 * Change the status of a registered instance by making the appropriate REST
+	 * call, a single status PUT in place of a cancellation and a registration.
+	 * Eureka keeps the status as an override that the heartbeats do not reset.
+	 */
+	public boolean statusUpdate(Application application) {
+		InstanceInfo instanceInfo = getInstanceInfo(application);
+		EurekaHttpResponse<Void> httpResponse;
 		try {
-			EurekaHttpResponse<Void> httpResponse = this.transport.getEurekaHttpClient().cancel(appName, instanceId);
+			httpResponse = send(instanceInfo.getAppName(), instanceInfo.getId()
+					, client -> client.statusUpdate(instanceInfo.getAppName(), instanceInfo.getId()
+							, application.getStatus(), instanceInfo));
+		} catch (Exception e) {
+			logger.warn("EurekaLite_{}/{} - status update failed: {}", instanceInfo.getAppName(), instanceInfo.getId()
+					, e.getMessage());
+			return false;
+		}
+		logger.info("EurekaLite_{}/{} - status {} update status: {}", instanceInfo.getAppName(), instanceInfo.getId()
+				, application.getStatus(), httpResponse.getStatusCode());
+		if (httpResponse.getStatusCode() == HttpStatus.NOT_FOUND.value()) {
+			// registered with the status it should have
+			return register(instanceInfo);
+		}
+		return httpResponse.getStatusCode() == HttpStatus.OK.value();
+	}
+
+	public boolean cancel(String appName, String instanceId) {
+		boolean cancelled = false;
+		try {
+			EurekaHttpResponse<Void> httpResponse = send(appName, instanceId, client -> client.cancel(appName, instanceId));
 			logger.info("EurekaLite_{}/{} - deregister  status: {}", appName, instanceId, httpResponse.getStatusCode());
+			// an instance eureka does not know is as good as cancelled
+			cancelled = httpResponse.getStatusCode() == HttpStatus.OK.value()
+					|| httpResponse.getStatusCode() == HttpStatus.NOT_FOUND.value();
 		} catch (Exception e) {
-			logger.error("EurekaLite_"+appName+"/"+ instanceId + " - de-registration failed " + e.getMessage(), e);
+			logger.warn("EurekaLite_{}/{} - de-registration failed: {}", appName, instanceId, e.getMessage());
+			logger.debug("De-registration failure", e);
 		}
-		this.transport.shutdown();
+		evictInstanceInfo(appName, instanceId);
+		return cancelled;
+	}
+
+	/**
+	 * Bring the registry mirror up to date now rather than at its next refresh.
+	 */
+	public void refreshRegistry() {
+		registry.getApplications();
+		registry.refresh();
 	}
 
+	/**
+	 * Read from the registry mirror, which is refreshed from eureka's delta endpoint.
+	 */
 	public Registration getRegistration(String appName, String instanceId) {
-		EurekaHttpResponse<InstanceInfo> response = this.transport.getEurekaHttpClient().getInstance(appName, instanceId);
-		//TODO: error handling and logging
-		InstanceInfo instanceInfo = response.getEntity();
+		com.netflix.discovery.shared.Application application = registry.getApplications().getRegisteredApplications(appName);
+		InstanceInfo instanceInfo = application != null ? application.getByInstanceId(instanceId) : null;
+		if (instanceInfo == null) {
+			logger.debug("EurekaLite_{}/{} - not found in the registry", appName, instanceId);
+			return null;
+		}
 
 		Registration registration = getRegistration(instanceInfo);
 		return registration;
 	}
 
 	protected Registration getRegistration(InstanceInfo instanceInfo) {
-		Application application = new Application(instanceInfo.getAppName(), instanceInfo.getInstanceId(), instanceInfo.getHostName(), instanceInfo.getPort());
+		String namespace = instanceInfo.getMetadata() != null ? instanceInfo.getMetadata().get(NAMESPACE_METADATA) : null;
+		Application application = new Application(instanceInfo.getAppName(), instanceInfo.getInstanceId(), instanceInfo.getHostName(), instanceInfo.getPort(), instanceInfo.getStatus(), namespace);
 
 		Registration registration = new Registration();
 		registration.setApplication(application);
+		registration.setInstance(new Instance());
 		registration.update(instanceInfo);
 		return registration;
 	}
 
 	public List<Registration> getRegistrations(String appName) {
-		EurekaHttpResponse<com.netflix.discovery.shared.Application> response = this.transport.getEurekaHttpClient().getApplication(appName);
-		//TODO: error handling and logging
-		com.netflix.discovery.shared.Application application = response.getEntity();
+		com.netflix.discovery.shared.Application application = registry.getApplications().getRegisteredApplications(appName);
+		if (application == null) {
+			return Collections.emptyList();
+		}
 
 		return getRegistrations(application);
 	}
@@ -237,15 +580,25 @@ public class Eureka implements ApplicationContextAware {
 		return registrations;
 	}
 
+	/**
+	 * Whether the controller registered this instance, rather than a eureka
+	 * client of its own or anyone else using the same application name.
+	 */
+	public static boolean isManaged(Registration registration) {
+		return registration.getInstance() != null
+				&& MANAGED_BY.equals(registration.getInstance().getManagedBy());
+	}
+
 	public Map<String, List<Registration>> getApplications() {
 		//TODO: support regions
-		EurekaHttpResponse<Applications> response = this.transport.getEurekaHttpClient().getApplications();
-		List<com.netflix.discovery.shared.Application> applications = response.getEntity().getRegisteredApplications();
+		List<com.netflix.discovery.shared.Application> applications = registry.getApplications().getRegisteredApplications();
 		LinkedHashMap<String, List<Registration>> map = new LinkedHashMap<>();
 
 		for (com.netflix.discovery.shared.Application application : applications) {
 			List<Registration> registrations = getRegistrations(application);
-			map.put(application.getName(), registrations);
+			if (!registrations.isEmpty()) {
+				map.put(application.getName(), registrations);
+			}
 		}
 
 		return map;
@@ -255,4 +608,40 @@ public class Eureka implements ApplicationContextAware {
 	public void setApplicationContext(ApplicationContext applicationContext) throws BeansException {
 		context = applicationContext;
 	}
+
+	private static class CachedInstanceInfo {
+
+		private final String hostname;
+		private final int port;
+		private final InstanceInfo instanceInfo;
+
+		CachedInstanceInfo(Application application, InstanceInfo instanceInfo) {
+			this.hostname = application.getHostname();
+			this.port = application.getPort();
+			this.instanceInfo = instanceInfo;
+		}
+
+		boolean matches(Application application) {
+			return port == application.getPort()
+					&& Objects.equals(hostname, application.getHostname());
+		}
+	}
+
+	// every EurekaInstanceConfigBean looks up the controller's own host when it
+	// is created, an interface scan and reverse lookup that gives the same
+	// answer each time, so do it once instead of once per instance
+	private static class ResolvedInetUtils extends InetUtils {
+
+		private final HostInfo hostInfo;
+
+		ResolvedInetUtils(InetUtils inetUtils) {
+			super(new InetUtilsProperties());
+			this.hostInfo = inetUtils.findFirstNonLoopbackHostInfo();
+		}
+
+		@Override
+		public HostInfo findFirstNonLoopbackHostInfo() {
+			return hostInfo;
+		}
+	}
 }
@@ -17,11 +17,18 @@
 
 package io.agilehandy.k8s.eureka;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.cloud.commons.util.InetUtils;
 import org.springframework.cloud.netflix.eureka.CloudEurekaClient;
 import org.springframework.cloud.netflix.eureka.EurekaClientConfigBean;
+import org.springframework.cloud.netflix.eureka.EurekaInstanceConfigBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Lazy;
@@ -33,10 +40,35 @@ import org.springframework.context.annotation.Lazy;
 @EnableConfigurationProperties
 public class EurekaLiteConfiguration {
 
-	@Bean
+	private static Logger logger = LoggerFactory.getLogger(EurekaLiteConfiguration.class);
+
+	@Bean(destroyMethod = "shutdown")
 	@ConditionalOnMissingBean
-	public Eureka eureka(InetUtils inetUtils, @Lazy CloudEurekaClient eurekaClient, @Lazy EurekaClientConfigBean clientConfig) {
-		return new Eureka(inetUtils, eurekaClient, clientConfig);
+	public Eureka eureka(InetUtils inetUtils, @Lazy CloudEurekaClient eurekaClient, @Lazy EurekaClientConfigBean clientConfig
+			, EurekaLiteProperties properties, ObjectProvider<EurekaInstanceConfigBean> instanceConfig
+			, ObjectProvider<MeterRegistry> meterRegistry) {
+		int circuitMaxOpenSeconds = properties.getCircuitMaxOpenSeconds();
+		EurekaInstanceConfigBean instance = instanceConfig.getIfAvailable();
+		if (instance != null) {
+			circuitMaxOpenSeconds = circuitMaxOpenSeconds(circuitMaxOpenSeconds
+					, instance.getLeaseExpirationDurationInSeconds(), instance.getLeaseRenewalIntervalInSeconds());
+			if (circuitMaxOpenSeconds < properties.getCircuitMaxOpenSeconds()) {
+				logger.warn("eureka.lite.circuit-max-open-seconds capped at {} seconds, the lease expiration less the"
+						+ " renewal interval", circuitMaxOpenSeconds);
+			}
+		}
+		return new Eureka(inetUtils, eurekaClient, clientConfig, properties
+				, meterRegistry.getIfAvailable(SimpleMeterRegistry::new), circuitMaxOpenSeconds);
+	}
+
+	/**
+	 * Cap the pauses between probes at the time a lease has left once its
+	 * heartbeat is due, so the heartbeats held back by a pause still renew their
+	 * leases.
+	 */
+	static int circuitMaxOpenSeconds(int circuitMaxOpenSeconds, int leaseExpirationSeconds
+			, int leaseRenewalIntervalSeconds) {
+		return Math.min(circuitMaxOpenSeconds, Math.max(1, leaseExpirationSeconds - leaseRenewalIntervalSeconds));
 	}
 
 }
@@ -11,6 +11,43 @@ public class EurekaLiteProperties {
 
 	private boolean unregisterOnShutdown = false;
 
+	// upper bound of concurrent register/renew/cancel requests
+	private int maxInFlightRequests = 50;
+
+	// a request not completed within this time fails with a timeout
+	private long requestTimeoutMillis = 10000;
+
+	// rebuild the transport after this many consecutive failed requests, 0 to disable
+	private int transportRebuildThreshold = 20;
+
+	// file the registration state is snapshotted to and restored from at startup, none to disable
+	private String snapshotPath;
+
+	private int snapshotIntervalSeconds = 15;
+
+	// spread the instances over the defaultZone peers by key, when there are several
+	private boolean peerRouting = true;
+
+	// quarantine a peer after this many consecutive failed requests
+	private int peerFailureThreshold = 3;
+
+	private int peerQuarantineSeconds = 30;
+
+	// stop sending requests after this many consecutive failures, 0 to never stop
+	private int circuitFailureThreshold = 10;
+
+	// first pause before probing eureka again, doubled after each failed probe
+	private int circuitOpenSeconds = 5;
+
+	// longest pause, at most the lease expiration less the renewal interval
+	private int circuitMaxOpenSeconds = 30;
+
+	// adapt the concurrent requests to eureka's latency, up to max-in-flight-requests
+	private boolean adaptiveConcurrency = true;
+
+	// run every eureka request on a virtual thread of its own, on java 21 and later
+	private boolean virtualThreads = false;
+
 	public boolean isUnregisterOnShutdown() {
 		return unregisterOnShutdown;
 	}
@@ -18,4 +55,109 @@ public class EurekaLiteProperties {
 	public void setUnregisterOnShutdown(boolean unregisterOnShutdown) {
 		this.unregisterOnShutdown = unregisterOnShutdown;
 	}
+
+	public int getMaxInFlightRequests() {
+		return maxInFlightRequests;
+	}
+
+	public void setMaxInFlightRequests(int maxInFlightRequests) {
+		this.maxInFlightRequests = maxInFlightRequests;
+	}
+
+	public long getRequestTimeoutMillis() {
+		return requestTimeoutMillis;
+	}
+
+	public void setRequestTimeoutMillis(long requestTimeoutMillis) {
+		this.requestTimeoutMillis = requestTimeoutMillis;
+	}
+
+	public int getTransportRebuildThreshold() {
+		return transportRebuildThreshold;
+	}
+
+	public void setTransportRebuildThreshold(int transportRebuildThreshold) {
+		this.transportRebuildThreshold = transportRebuildThreshold;
+	}
+
+	public String getSnapshotPath() {
+		return snapshotPath;
+	}
+
+	public void setSnapshotPath(String snapshotPath) {
+		this.snapshotPath = snapshotPath;
+	}
+
+	public int getSnapshotIntervalSeconds() {
+		return snapshotIntervalSeconds;
+	}
+
+	public void setSnapshotIntervalSeconds(int snapshotIntervalSeconds) {
+		this.snapshotIntervalSeconds = snapshotIntervalSeconds;
+	}
+
+	public boolean isPeerRouting() {
+		return peerRouting;
+	}
+
+	public void setPeerRouting(boolean peerRouting) {
+		this.peerRouting = peerRouting;
+	}
+
+	public int getPeerFailureThreshold() {
+		return peerFailureThreshold;
+	}
+
+	public void setPeerFailureThreshold(int peerFailureThreshold) {
+		this.peerFailureThreshold = peerFailureThreshold;
+	}
+
+	public int getPeerQuarantineSeconds() {
+		return peerQuarantineSeconds;
+	}
+
+	public void setPeerQuarantineSeconds(int peerQuarantineSeconds) {
+		this.peerQuarantineSeconds = peerQuarantineSeconds;
+	}
+
+	public int getCircuitFailureThreshold() {
+		return circuitFailureThreshold;
+	}
+
+	public void setCircuitFailureThreshold(int circuitFailureThreshold) {
+		this.circuitFailureThreshold = circuitFailureThreshold;
+	}
+
+	public int getCircuitOpenSeconds() {
+		return circuitOpenSeconds;
+	}
+
+	public void setCircuitOpenSeconds(int circuitOpenSeconds) {
+		this.circuitOpenSeconds = circuitOpenSeconds;
+	}
+
+	public int getCircuitMaxOpenSeconds() {
+		return circuitMaxOpenSeconds;
+	}
+
+	public void setCircuitMaxOpenSeconds(int circuitMaxOpenSeconds) {
+		this.circuitMaxOpenSeconds = circuitMaxOpenSeconds;
+	}
+
+	public boolean isAdaptiveConcurrency() {
+		return adaptiveConcurrency;
+	}
+
+	public void setAdaptiveConcurrency(boolean adaptiveConcurrency) {
+		this.adaptiveConcurrency = adaptiveConcurrency;
+	}
+
+	public boolean isVirtualThreads() {
+		return virtualThreads;
+	}
+
+	public void setVirtualThreads(boolean virtualThreads) {
+		this.virtualThreads = virtualThreads;
+	}
+
 }
@@ -0,0 +1,177 @@
+package io.agilehandy.k8s.eureka;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import com.netflix.discovery.shared.resolver.DefaultEndpoint;
+import com.netflix.discovery.shared.transport.EurekaHttpClient;
+import com.netflix.discovery.shared.transport.EurekaHttpResponse;
+import com.netflix.discovery.shared.transport.TransportClientFactory;
+import io.agilehandy.k8s.sharding.HashRing;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The eureka peers of the zone, each with a client and connection pool of its
+ * own, and the routing of the requests about an instance to one of them.
+ *
+ * An instance sticks to the peer owning its key on a consistent hash ring of
+ * the healthy peers, and the peers replicate what it receives to each other.
+ * A request failing at the transport level, or answered with a server error,
+ * is sent on to the next peer at once. A peer failing that many times in a
+ * row is quarantined for a while, which moves only its own instances to the
+ * others; once the quarantine ends a single failure quarantines it again.
+ *
+ * @author Haytham Mohamed
+ */
+public class EurekaPeers {
+
+	private static Logger logger = LoggerFactory.getLogger(EurekaPeers.class);
+
+	private static final int VIRTUAL_NODES = 64;
+
+	private final Map<String, Peer> peers = new LinkedHashMap<>();
+	private final Supplier<TransportClientFactory> factories;
+	private final int failureThreshold;
+	private final long quarantineMillis;
+
+	// peers -> their ring, there are only a few combinations of healthy peers
+	private final Map<Set<String>, HashRing> rings = new ConcurrentHashMap<>();
+
+	public EurekaPeers(List<String> serviceUrls, Supplier<TransportClientFactory> factories
+			, int failureThreshold, long quarantineMillis) {
+		this.factories = factories;
+		this.failureThreshold = Math.max(1, failureThreshold);
+		this.quarantineMillis = quarantineMillis;
+		for (String serviceUrl : serviceUrls) {
+			peers.computeIfAbsent(serviceUrl, Peer::new);
+		}
+	}
+
+	public List<String> getServiceUrls() {
+		return new ArrayList<>(peers.keySet());
+	}
+
+	public int getHealthy() {
+		long now = System.currentTimeMillis();
+		return (int) peers.values().stream().filter(peer -> peer.isHealthy(now)).count();
+	}
+
+	/**
+	 * Send a request about the instance of the key to its peer, and on to the
+	 * next one as long as peers fail. Throws the last failure if every peer failed.
+	 */
+	public <T> EurekaHttpResponse<T> send(String key, Function<EurekaHttpClient, EurekaHttpResponse<T>> request) {
+		Set<String> tried = new HashSet<>();
+		RuntimeException failure = null;
+		EurekaHttpResponse<T> response = null;
+		for (Peer peer = next(key, tried); peer != null; peer = next(key, tried)) {
+			tried.add(peer.serviceUrl);
+			try {
+				response = request.apply(peer.client);
+			} catch (RuntimeException e) {
+				failure = e;
+				response = null;
+				peer.failed(e.getMessage());
+				continue;
+			}
+			if (response.getStatusCode() < 500) {
+				peer.succeeded();
+				return response;
+			}
+			peer.failed("status " + response.getStatusCode());
+		}
+		if (response != null) {
+			return response;
+		}
+		throw failure;
+	}
+
+	// the owner of the key among the healthy peers not tried yet, or among
+	// the quarantined ones once none is left
+	private Peer next(String key, Set<String> tried) {
+		long now = System.currentTimeMillis();
+		Set<String> healthy = new HashSet<>();
+		Set<String> quarantined = new HashSet<>();
+		for (Peer peer : peers.values()) {
+			if (!tried.contains(peer.serviceUrl)) {
+				(peer.isHealthy(now) ? healthy : quarantined).add(peer.serviceUrl);
+			}
+		}
+		Set<String> candidates = healthy.isEmpty() ? quarantined : healthy;
+		if (candidates.isEmpty()) {
+			return null;
+		}
+		return peers.get(rings.computeIfAbsent(Collections.unmodifiableSet(candidates)
+				, members -> new HashRing(members, VIRTUAL_NODES)).owner(key));
+	}
+
+	public void shutdown() {
+		peers.values().forEach(Peer::shutdown);
+	}
+
+	private class Peer {
+
+		private final String serviceUrl;
+		private final AtomicInteger failures = new AtomicInteger();
+		private volatile long quarantinedUntil;
+		private volatile TransportClientFactory factory;
+		private volatile EurekaHttpClient client;
+
+		Peer(String serviceUrl) {
+			this.serviceUrl = serviceUrl;
+			connect();
+		}
+
+		boolean isHealthy(long now) {
+			return quarantinedUntil <= now;
+		}
+
+		void succeeded() {
+			failures.set(0);
+			if (quarantinedUntil > 0) {
+				quarantinedUntil = 0;
+				logger.info("Eureka peer {} is back", serviceUrl);
+			}
+		}
+
+		void failed(String reason) {
+			if (failures.incrementAndGet() >= failureThreshold
+					&& isHealthy(System.currentTimeMillis())) {
+				synchronized (this) {
+					long now = System.currentTimeMillis();
+					if (isHealthy(now)) {
+						logger.warn("Quarantining eureka peer {} for {} ms after {} consecutive failures, last: {}"
+								, serviceUrl, quarantineMillis, failures.get(), reason);
+						quarantinedUntil = now + quarantineMillis;
+						// a fresh connection pool for when it is tried again
+						TransportClientFactory oldFactory = factory;
+						EurekaHttpClient oldClient = client;
+						connect();
+						oldClient.shutdown();
+						oldFactory.shutdown();
+					}
+				}
+			}
+		}
+
+		private void connect() {
+			factory = factories.get();
+			client = factory.newClient(new DefaultEndpoint(serviceUrl));
+		}
+
+		void shutdown() {
+			client.shutdown();
+			factory.shutdown();
+		}
+	}
+}
@@ -0,0 +1,148 @@
+package io.agilehandy.k8s.eureka;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import com.netflix.appinfo.InstanceInfo;
+import com.netflix.discovery.shared.Application;
+import com.netflix.discovery.shared.Applications;
+import com.netflix.discovery.shared.transport.EurekaHttpClient;
+import com.netflix.discovery.shared.transport.EurekaHttpResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.http.HttpStatus;
+
+/**
+ * In-memory copy of the Eureka registry. Seeded with a full fetch on first use
+ * and then kept current from the delta endpoint; a full fetch is only repeated
+ * when the hash code of the patched copy does not match the server's. A
+ * published copy is never modified: every refresh builds a new one.
+ *
+ * @author Haytham Mohamed
+ */
+public class EurekaRegistryMirror {
+
+	private static Logger logger = LoggerFactory.getLogger(EurekaRegistryMirror.class);
+
+	private final Supplier<EurekaHttpClient> client;
+	private final long fetchIntervalSeconds;
+	private final Object lock = new Object();
+
+	private volatile Applications applications;
+	private ScheduledExecutorService refresher;
+
+	public EurekaRegistryMirror(Supplier<EurekaHttpClient> client, long fetchIntervalSeconds) {
+		this.client = client;
+		this.fetchIntervalSeconds = Math.max(1, fetchIntervalSeconds);
+	}
+
+	/**
+	 * Current copy of the registry, fetched and then refreshed in the background
+	 * from the first call on.
+	 */
+	public Applications getApplications() {
+		Applications current = this.applications;
+		if (current == null) {
+			synchronized (lock) {
+				if (this.applications == null) {
+					fetchFull();
+					startRefreshing();
+				}
+				current = this.applications;
+			}
+		}
+		return current;
+	}
+
+	public void shutdown() {
+		synchronized (lock) {
+			if (refresher != null) {
+				refresher.shutdownNow();
+			}
+		}
+	}
+
+	private void startRefreshing() {
+		refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "EUREKA_REGISTRY_MIRROR");
+			thread.setDaemon(true);
+			return thread;
+		});
+		refresher.scheduleWithFixedDelay(this::refresh, fetchIntervalSeconds, fetchIntervalSeconds, TimeUnit.SECONDS);
+	}
+
+	void refresh() {
+		try {
+			synchronized (lock) {
+				EurekaHttpResponse<Applications> response = client.get().getDelta();
+				Applications delta = response.getEntity();
+				if (response.getStatusCode() != HttpStatus.OK.value() || delta == null) {
+					logger.debug("No registry delta available (status {}), fetching the full registry"
+							, response.getStatusCode());
+					fetchFull();
+					return;
+				}
+				applyDelta(delta);
+				String hashCode = this.applications.getReconcileHashCode();
+				if (!hashCode.equals(delta.getAppsHashCode())) {
+					logger.debug("Registry hash code {} differs from eureka's {}, fetching the full registry"
+							, hashCode, delta.getAppsHashCode());
+					fetchFull();
+				}
+			}
+		} catch (Exception e) {
+			logger.warn("Could not refresh the eureka registry mirror: {}", e.getMessage());
+		}
+	}
+
+	private void fetchFull() {
+		EurekaHttpResponse<Applications> response = client.get().getApplications();
+		Applications full = response.getEntity();
+		if (response.getStatusCode() != HttpStatus.OK.value() || full == null) {
+			throw new IllegalStateException("Fetching the eureka registry failed with status "
+					+ response.getStatusCode());
+		}
+		this.applications = full;
+	}
+
+	/**
+	 * Patches a copy of the current registry and publishes it as a whole, so the
+	 * {@link Applications} readers hold are never changed under them.
+	 */
+	private void applyDelta(Applications delta) {
+		Applications local = copyOf(this.applications);
+		for (Application changed : delta.getRegisteredApplications()) {
+			for (InstanceInfo instance : changed.getInstances()) {
+				Application existing = local.getRegisteredApplications(instance.getAppName());
+				InstanceInfo.ActionType action = instance.getActionType();
+				if (action == InstanceInfo.ActionType.DELETED) {
+					if (existing != null) {
+						existing.removeInstance(instance);
+					}
+				} else {
+					if (existing == null) {
+						existing = new Application(instance.getAppName());
+						local.addApplication(existing);
+					}
+					existing.addInstance(instance);
+				}
+			}
+		}
+		local.setAppsHashCode(local.getReconcileHashCode());
+		this.applications = local;
+	}
+
+	private static Applications copyOf(Applications applications) {
+		Applications copy = new Applications();
+		for (Application application : applications.getRegisteredApplications()) {
+			Application app = new Application(application.getName());
+			application.getInstances().forEach(app::addInstance);
+			copy.addApplication(app);
+		}
+		copy.setAppsHashCode(applications.getAppsHashCode());
+		return copy;
+	}
+}
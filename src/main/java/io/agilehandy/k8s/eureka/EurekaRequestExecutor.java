@@ -0,0 +1,285 @@
+package io.agilehandy.k8s.eureka;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs blocking Eureka calls on a bounded pool so that callers get a future
+ * back and a slow Eureka peer only holds up its own requests.
+ *
+ * Queued calls run in the order of their deadlines, so a heartbeat whose
+ * lease is about to expire goes ahead of one that has time. A worker only
+ * takes the next call once the adaptive limit leaves room for it and the
+ * circuit breaker lets it through; while the breaker is open, calls without
+ * a deadline are refused at once, and heartbeats wait for Eureka to be back.
+ *
+ * The calls run on a pool of platform worker threads, one per possible
+ * concurrent request. Given a thread factory instead, e.g. of virtual threads
+ * on Java 21, a single dispatcher takes the calls through the same gate and
+ * starts a thread of that factory for each, so thousands of blocking requests
+ * can be in flight without as many platform threads.
+ *
+ * @author Haytham Mohamed
+ */
+public class EurekaRequestExecutor {
+
+	// how often waiting workers look at the breaker and the limit again
+	private static final long GATE_POLL_MILLIS = 100;
+
+	// the request whose call runs on this thread
+	private static final ThreadLocal<Request<?>> RUNNING = new ThreadLocal<>();
+
+	private final PriorityBlockingQueue<Request<?>> queue = new PriorityBlockingQueue<>();
+	private final List<Thread> workers = new ArrayList<>();
+	private final ScheduledExecutorService timer;
+	private final long requestTimeoutMillis;
+	private final CircuitBreaker breaker;
+	private final AdaptiveLimit limit;
+	private final AtomicInteger inFlight = new AtomicInteger();
+	private final AtomicLong sequence = new AtomicLong();
+
+	// workers past the gate, guarded by the gate
+	private final Object gate = new Object();
+	private int admitted;
+	private volatile boolean shutdown;
+
+	public EurekaRequestExecutor(int maxInFlightRequests, long requestTimeoutMillis) {
+		this(maxInFlightRequests, requestTimeoutMillis, new CircuitBreaker(0, 1, 1)
+				, new AdaptiveLimit(1, maxInFlightRequests, false), null);
+	}
+
+	/**
+	 * @param threadsPerCall starts a thread for each call, null to run the calls on platform workers
+	 */
+	EurekaRequestExecutor(int maxInFlightRequests, long requestTimeoutMillis
+			, CircuitBreaker breaker, AdaptiveLimit limit, ThreadFactory threadsPerCall) {
+		this.breaker = breaker;
+		this.limit = limit;
+		this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "EUREKA_REQUEST_TIMER");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.requestTimeoutMillis = requestTimeoutMillis;
+		if (threadsPerCall != null) {
+			Thread dispatcher = new Thread(() -> work(threadsPerCall), "EUREKA_REQUEST_DISPATCHER");
+			dispatcher.setDaemon(true);
+			workers.add(dispatcher);
+		} else {
+			for (int i = 1; i <= Math.max(1, maxInFlightRequests); i++) {
+				Thread worker = new Thread(() -> work(null), "EUREKA_REQUEST_" + i);
+				worker.setDaemon(true);
+				workers.add(worker);
+			}
+		}
+		workers.forEach(Thread::start);
+	}
+
+	/**
+	 * A factory of virtual threads, or null when the JVM has none (before Java 21).
+	 * Looked up reflectively as the controller is built for Java 8.
+	 */
+	public static ThreadFactory virtualThreadFactory(String namePrefix) {
+		try {
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+			builder = builderType.getMethod("name", String.class, long.class).invoke(builder, namePrefix, 1L);
+			return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			// no virtual threads, or only as a preview feature
+			return null;
+		}
+	}
+
+	/**
+	 * Submit a call; the returned future completes with its result, its failure,
+	 * or a {@link TimeoutException} once the call ran longer than the request timeout.
+	 * While the circuit breaker is open it fails with a {@link RejectedExecutionException}.
+	 */
+	public <T> CompletableFuture<T> submit(Callable<T> call) {
+		return submit(call, System.currentTimeMillis(), false);
+	}
+
+	/**
+	 * Submit a call due by the deadline, e.g. a heartbeat by the expiry of its
+	 * lease. It runs ahead of the calls with a later deadline, and waits while
+	 * the circuit breaker is open.
+	 */
+	public <T> CompletableFuture<T> submit(Callable<T> call, long deadline) {
+		return submit(call, deadline, true);
+	}
+
+	private <T> CompletableFuture<T> submit(Callable<T> call, long deadline, boolean waits) {
+		Request<T> request = new Request<>(call, deadline, sequence.incrementAndGet());
+		if (!waits && breaker.isOpen()) {
+			request.result.completeExceptionally(
+					new RejectedExecutionException("Eureka is unavailable, its circuit breaker is open"));
+		} else {
+			queue.add(request);
+		}
+		return request.result;
+	}
+
+	// take the calls the gate lets through and run them on this thread, or on
+	// a thread of their own when given a factory
+	private void work(ThreadFactory threadsPerCall) {
+		while (!shutdown) {
+			boolean probe;
+			try {
+				probe = admit();
+			} catch (InterruptedException e) {
+				continue;
+			}
+			Request<?> request;
+			try {
+				request = queue.take();
+			} catch (InterruptedException e) {
+				// shutting down, or the timeout of a call that just completed
+				release(probe);
+				continue;
+			}
+			if (!probe && breaker.isOpen()) {
+				// admitted before the breaker opened, wait like the rest
+				queue.add(request);
+				release(probe);
+			} else if (threadsPerCall == null) {
+				run(request, probe);
+			} else {
+				try {
+					threadsPerCall.newThread(() -> run(request, probe)).start();
+				} catch (RuntimeException | OutOfMemoryError e) {
+					request.result.completeExceptionally(e);
+					release(probe);
+				}
+			}
+		}
+	}
+
+	private void run(Request<?> request, boolean probe) {
+		try {
+			request.run();
+		} finally {
+			release(probe);
+		}
+	}
+
+	private void release(boolean probe) {
+		synchronized (gate) {
+			admitted--;
+			gate.notifyAll();
+		}
+		if (probe) {
+			breaker.probed();
+		}
+	}
+
+	// wait for room under the limit and for the breaker to let a call through,
+	// returning whether that call is the breaker's probe
+	private boolean admit() throws InterruptedException {
+		synchronized (gate) {
+			while (!shutdown && (admitted >= limit.get() || !breaker.tryAcquire())) {
+				gate.wait(GATE_POLL_MILLIS);
+			}
+			admitted++;
+			return breaker.isOpen();
+		}
+	}
+
+	private ScheduledFuture<?> scheduleTimeout(CompletableFuture<?> result, Thread worker) {
+		if (requestTimeoutMillis <= 0) {
+			return null;
+		}
+		return timer.schedule(() -> {
+			if (result.completeExceptionally(new TimeoutException(
+					"Eureka request did not complete within " + requestTimeoutMillis + " ms"))) {
+				limit.failed();
+				worker.interrupt();
+			}
+		}, requestTimeoutMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Whether the call running on this thread already timed out. Its timeout
+	 * counted against the limit, so its late outcome should not count again.
+	 */
+	static boolean timedOut() {
+		Request<?> request = RUNNING.get();
+		return request != null && request.result.isDone();
+	}
+
+	public int getInFlight() {
+		return inFlight.get();
+	}
+
+	public int getQueued() {
+		return queue.size();
+	}
+
+	public int getLimit() {
+		return limit.get();
+	}
+
+	public boolean isCircuitOpen() {
+		return breaker.isOpen();
+	}
+
+	public void shutdown() {
+		shutdown = true;
+		workers.forEach(Thread::interrupt);
+		timer.shutdownNow();
+	}
+
+	private class Request<T> implements Comparable<Request<?>> {
+
+		private final Callable<T> call;
+		private final long deadline;
+		private final long sequence;
+		private final CompletableFuture<T> result = new CompletableFuture<>();
+
+		Request(Callable<T> call, long deadline, long sequence) {
+			this.call = call;
+			this.deadline = deadline;
+			this.sequence = sequence;
+		}
+
+		void run() {
+			if (result.isDone()) {
+				return;
+			}
+			inFlight.incrementAndGet();
+			RUNNING.set(this);
+			ScheduledFuture<?> timeout = scheduleTimeout(result, Thread.currentThread());
+			try {
+				result.complete(call.call());
+			} catch (Throwable e) {
+				result.completeExceptionally(e);
+			} finally {
+				if (timeout != null) {
+					timeout.cancel(false);
+				}
+				Thread.interrupted(); // clear an interrupt raised by the timeout
+				RUNNING.remove();
+				inFlight.decrementAndGet();
+			}
+		}
+
+		// earliest deadline first, in order of submission among equals
+		@Override
+		public int compareTo(Request<?> other) {
+			int byDeadline = Long.compare(deadline, other.deadline);
+			return byDeadline != 0 ? byDeadline : Long.compare(sequence, other.sequence);
+		}
+	}
+}
@@ -22,12 +22,16 @@ public class Instance {
 	@Min(1)
 	private long lastUpdatedTimestamp;
 
+	// who registered the instance, as told by its metadata
+	private String managedBy;
+
 	public Instance() {}
 
 	public Instance(Instance other) {
 		this.status = other.getStatus();
 		this.lastDirtyTimestamp = other.getLastDirtyTimestamp();
 		this.lastUpdatedTimestamp = other.getLastUpdatedTimestamp();
+		this.managedBy = other.getManagedBy();
 	}
 
 	public Instance(@NotNull InstanceInfo.InstanceStatus status
@@ -46,6 +50,9 @@ public class Instance {
 		setStatus(instanceInfo.getStatus());
 		setLastDirtyTimestamp(instanceInfo.getLastDirtyTimestamp());
 		setLastUpdatedTimestamp(instanceInfo.getLastUpdatedTimestamp());
+		if (instanceInfo.getMetadata() != null) {
+			setManagedBy(instanceInfo.getMetadata().get(Eureka.MANAGED_BY_METADATA));
+		}
 	}
 
 	public InstanceInfo.InstanceStatus getStatus() {
@@ -60,6 +67,10 @@ public class Instance {
 		return lastUpdatedTimestamp;
 	}
 
+	public String getManagedBy() {
+		return managedBy;
+	}
+
 	public void setStatus(InstanceInfo.InstanceStatus status) {
 		this.status = status;
 	}
@@ -72,4 +83,8 @@ public class Instance {
 		this.lastUpdatedTimestamp = lastUpdatedTimestamp;
 	}
 
+	public void setManagedBy(String managedBy) {
+		this.managedBy = managedBy;
+	}
+
 }
@@ -0,0 +1,290 @@
+/*
+ * Copyright 2012-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.agilehandy.k8s.leader;
+
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PreDestroy;
+
+import io.agilehandy.k8s.common.Util;
+import io.agilehandy.k8s.sharding.ShardingProperties;
+import io.fabric8.kubernetes.api.model.coordination.v1.DoneableLease;
+import io.fabric8.kubernetes.api.model.coordination.v1.Lease;
+import io.fabric8.kubernetes.api.model.coordination.v1.LeaseBuilder;
+import io.fabric8.kubernetes.api.model.coordination.v1.LeaseSpec;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.KubernetesClientException;
+import io.fabric8.kubernetes.client.dsl.Resource;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+/**
+ * Elects the one replica of the controller that registers and heartbeats the
+ * instances, by holding a Lease. The others keep their caches warm and try to
+ * acquire the lease every retry period, which they may once it was released or
+ * not renewed for the lease duration; the leader steps down if it could not
+ * renew the lease within the renew deadline, before anyone may take over.
+ *
+ * As in client-go, a lease counts as renewed when its record is seen to change,
+ * as observed with the local clock, so the clocks of the replicas need not
+ * agree. Every update of the lease is made against the resource version that
+ * was read, so of two replicas racing for it only one wins.
+ *
+ * @author Haytham Mohamed
+ **/
+
+@Component
+public class LeaderElection {
+
+	private static Logger logger = LoggerFactory.getLogger(LeaderElection.class);
+
+	private final KubernetesClient client;
+	private final LeaderElectionProperties properties;
+	private final String identity;
+	private final String namespace;
+	private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+	private final Counter transitions;
+
+	private volatile boolean leader;
+	// when this replica last renewed the lease, in local nanoTime
+	private long renewedAt;
+	// the lease record last read, and when it was first seen
+	private String observedRecord;
+	private long observedAt;
+
+	private ScheduledExecutorService elector;
+	// listeners run apart from the elector, so they cannot delay a renewal
+	private ExecutorService notifier;
+
+	public LeaderElection(KubernetesClient client
+			, LeaderElectionProperties properties
+			, ShardingProperties sharding
+			, MeterRegistry meterRegistry) {
+		if (properties.isEnabled() && sharding.isEnabled()) {
+			throw new IllegalStateException("Leader election and sharding cannot be enabled together");
+		}
+		if (properties.isEnabled() && (properties.getRetryPeriodSeconds() >= properties.getRenewDeadlineSeconds()
+				|| properties.getRenewDeadlineSeconds() >= properties.getLeaseDurationSeconds())) {
+			throw new IllegalStateException("Leader election needs retry-period-seconds < renew-deadline-seconds"
+					+ " < lease-duration-seconds");
+		}
+		this.client = client;
+		this.properties = properties;
+		this.identity = Util.identity(properties.getIdentity());
+		this.namespace = StringUtils.hasText(properties.getLeaseNamespace()) ? properties.getLeaseNamespace()
+				: client.getNamespace() != null ? client.getNamespace() : "default";
+		this.transitions = meterRegistry.counter("eureka.controller.leader.transitions");
+		meterRegistry.gauge("eureka.controller.leader", Tags.empty(), this
+				, election -> election.isLeader() ? 1 : 0);
+	}
+
+	public String getIdentity() {
+		return identity;
+	}
+
+	/**
+	 * Whether this replica is in charge of the instances, always the case
+	 * without leader election.
+	 */
+	public boolean isLeader() {
+		return !properties.isEnabled() || leader;
+	}
+
+	/**
+	 * Whether this replica waits to take over from the leader.
+	 */
+	public boolean isStandby() {
+		return properties.isEnabled() && !leader;
+	}
+
+	/**
+	 * Called every time this replica becomes leader or stops being it.
+	 */
+	public void addListener(Runnable listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * Make the first attempt to acquire the lease before returning, then keep
+	 * renewing or trying to acquire it in the background.
+	 */
+	public synchronized void start() {
+		if (!properties.isEnabled() || elector != null) {
+			return;
+		}
+		logger.info("Running for leader of {}/{} as {}", namespace, properties.getLeaseName(), identity);
+		elector = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "LEADER_ELECTION");
+			thread.setDaemon(true);
+			return thread;
+		});
+		notifier = Executors.newSingleThreadExecutor(r -> {
+			Thread thread = new Thread(r, "LEADER_ELECTION_NOTIFIER");
+			thread.setDaemon(true);
+			return thread;
+		});
+		refresh();
+		elector.scheduleWithFixedDelay(this::refresh, properties.getRetryPeriodSeconds()
+				, properties.getRetryPeriodSeconds(), TimeUnit.SECONDS);
+	}
+
+	@PreDestroy
+	public synchronized void stop() {
+		if (elector == null) {
+			return;
+		}
+		elector.shutdownNow();
+		notifier.shutdownNow();
+		try {
+			elector.awaitTermination(properties.getRetryPeriodSeconds(), TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		elector = null;
+		if (leader) {
+			leader = false;
+			release();
+		}
+	}
+
+	// hand the lease over at once, rather than once it expires
+	private void release() {
+		try {
+			Lease lease = lease().get();
+			if (lease == null || lease.getSpec() == null || !identity.equals(lease.getSpec().getHolderIdentity())) {
+				return;
+			}
+			lease.getSpec().setHolderIdentity("");
+			lease.getSpec().setLeaseDurationSeconds(1);
+			lease.getSpec().setRenewTime(ZonedDateTime.now());
+			lease().lockResourceVersion(lease.getMetadata().getResourceVersion()).replace(lease);
+			logger.info("Released the leadership of {}/{}", namespace, properties.getLeaseName());
+		} catch (KubernetesClientException e) {
+			logger.warn("Could not release lease {}: {}", properties.getLeaseName(), e.getMessage());
+		}
+	}
+
+	void refresh() {
+		long now = System.nanoTime();
+		try {
+			if (tryAcquireOrRenew(now)) {
+				renewedAt = now;
+				update(true);
+				return;
+			}
+			// another replica holds the lease
+			update(false);
+		} catch (RuntimeException e) {
+			logger.warn("Could not {} lease {}: {}", leader ? "renew" : "acquire", properties.getLeaseName()
+					, e.getMessage());
+			if (leader && now - renewedAt >= TimeUnit.SECONDS.toNanos(properties.getRenewDeadlineSeconds())) {
+				logger.warn("Could not renew lease {} within {} seconds", properties.getLeaseName()
+						, properties.getRenewDeadlineSeconds());
+				update(false);
+			}
+		}
+	}
+
+	// whether this replica holds the lease now, throwing if that is not known
+	private boolean tryAcquireOrRenew(long now) {
+		ZonedDateTime time = ZonedDateTime.now();
+		Lease lease = lease().get();
+		if (lease == null) {
+			try {
+				client.leases().inNamespace(namespace).create(new LeaseBuilder()
+						.withNewMetadata()
+							.withName(properties.getLeaseName())
+							.withNamespace(namespace)
+						.endMetadata()
+						.withNewSpec()
+							.withHolderIdentity(identity)
+							.withLeaseDurationSeconds(properties.getLeaseDurationSeconds())
+							.withAcquireTime(time)
+							.withRenewTime(time)
+							.withLeaseTransitions(0)
+						.endSpec()
+						.build());
+				return true;
+			} catch (KubernetesClientException e) {
+				if (e.getCode() == 409) {
+					// another replica created it first
+					return false;
+				}
+				throw e;
+			}
+		}
+		if (lease.getSpec() == null) {
+			lease.setSpec(new LeaseSpec());
+		}
+		LeaseSpec spec = lease.getSpec();
+		String holder = spec.getHolderIdentity();
+		String record = holder + "/" + spec.getRenewTime() + "/" + spec.getLeaseTransitions();
+		if (!record.equals(observedRecord)) {
+			observedRecord = record;
+			observedAt = now;
+		}
+		boolean held = identity.equals(holder);
+		if (!held && StringUtils.hasText(holder)) {
+			long duration = TimeUnit.SECONDS.toNanos(spec.getLeaseDurationSeconds() != null
+					? spec.getLeaseDurationSeconds() : properties.getLeaseDurationSeconds());
+			if (now - observedAt < duration) {
+				return false;
+			}
+			logger.info("Lease {} held by {} expired", properties.getLeaseName(), holder);
+		}
+		if (!held) {
+			spec.setHolderIdentity(identity);
+			spec.setAcquireTime(time);
+			spec.setLeaseTransitions(spec.getLeaseTransitions() == null ? 1 : spec.getLeaseTransitions() + 1);
+		}
+		spec.setLeaseDurationSeconds(properties.getLeaseDurationSeconds());
+		spec.setRenewTime(time);
+		// fails with a conflict if anyone updated the lease since it was read
+		lease().lockResourceVersion(lease.getMetadata().getResourceVersion()).replace(lease);
+		return true;
+	}
+
+	private void update(boolean leading) {
+		if (leading == leader) {
+			return;
+		}
+		leader = leading;
+		transitions.increment();
+		if (leading) {
+			logger.info("Became the leader of {}/{}, taking over the instances", namespace, properties.getLeaseName());
+		} else {
+			logger.info("Stopped leading {}/{}, standing by", namespace, properties.getLeaseName());
+		}
+		notifier.execute(() -> listeners.forEach(Runnable::run));
+	}
+
+	private Resource<Lease, DoneableLease> lease() {
+		return client.leases().inNamespace(namespace).withName(properties.getLeaseName());
+	}
+
+}
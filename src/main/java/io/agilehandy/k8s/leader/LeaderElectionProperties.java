@@ -0,0 +1,103 @@
+/*
+ * Copyright 2012-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.agilehandy.k8s.leader;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * @author Haytham Mohamed
+ **/
+
+@ConfigurationProperties("eureka.k8s.leader-election")
+public class LeaderElectionProperties {
+
+	// one replica heartbeats every instance, the others stand by to take over
+	private boolean enabled = false;
+
+	// name of this replica, the pod name by default
+	private String identity;
+
+	private String leaseName = "springcloud-eureka-controller";
+
+	// namespace of the lease, the namespace of the client by default
+	private String leaseNamespace;
+
+	// a standby takes over once the lease was not renewed for this long
+	private int leaseDurationSeconds = 10;
+
+	// the leader steps down when it could not renew the lease for this long,
+	// before any standby may take over
+	private int renewDeadlineSeconds = 8;
+
+	// how often the leader renews the lease and the standbys try to acquire it
+	private int retryPeriodSeconds = 2;
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	public String getIdentity() {
+		return identity;
+	}
+
+	public void setIdentity(String identity) {
+		this.identity = identity;
+	}
+
+	public String getLeaseName() {
+		return leaseName;
+	}
+
+	public void setLeaseName(String leaseName) {
+		this.leaseName = leaseName;
+	}
+
+	public String getLeaseNamespace() {
+		return leaseNamespace;
+	}
+
+	public void setLeaseNamespace(String leaseNamespace) {
+		this.leaseNamespace = leaseNamespace;
+	}
+
+	public int getLeaseDurationSeconds() {
+		return leaseDurationSeconds;
+	}
+
+	public void setLeaseDurationSeconds(int leaseDurationSeconds) {
+		this.leaseDurationSeconds = leaseDurationSeconds;
+	}
+
+	public int getRenewDeadlineSeconds() {
+		return renewDeadlineSeconds;
+	}
+
+	public void setRenewDeadlineSeconds(int renewDeadlineSeconds) {
+		this.renewDeadlineSeconds = renewDeadlineSeconds;
+	}
+
+	public int getRetryPeriodSeconds() {
+		return retryPeriodSeconds;
+	}
+
+	public void setRetryPeriodSeconds(int retryPeriodSeconds) {
+		this.retryPeriodSeconds = retryPeriodSeconds;
+	}
+}
@@ -0,0 +1,325 @@
+/*
+ * Copyright 2012-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.agilehandy.k8s.lease;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PreDestroy;
+
+import io.agilehandy.k8s.eureka.Application;
+import io.agilehandy.k8s.eureka.Eureka;
+import io.agilehandy.k8s.eureka.EurekaLiteProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.cloud.netflix.eureka.EurekaInstanceConfigBean;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+/**
+ * Owns the heartbeats of every registered instance.
+ *
+ * Every instance waits in a min-heap ordered by when its next heartbeat is
+ * due: a random point within the renewal interval at first, one interval after
+ * the previous one from then on. A ticker thread takes the due instances off
+ * the heap once per second and sends their heartbeats through the asynchronous
+ * Eureka request executor, so heartbeats are spread over the whole interval,
+ * never run on the informer dispatch thread, and a slow request only delays
+ * its own instance. A failed heartbeat is retried after one second, then two,
+ * four and so on up to the interval, rather than a whole interval later, while
+ * its lease runs out. Each heartbeat is queued by the expiry of its lease, so
+ * when eureka lets fewer requests through the leases closest to expiring are
+ * renewed first; the margin left on the lease closest to expiring is a metric.
+ *
+ * With a snapshot path, the state of the instances is written to a file every
+ * few seconds and on shutdown. At startup the instances of the snapshot whose
+ * lease has not expired yet are renewed right away, before the informers have
+ * even listed the endpoints; whichever of them the startup reconciliation does
+ * not claim are released through {@link #takeRestored()}.
+ *
+ * @author Haytham Mohamed
+ **/
+
+@Component
+public class LeaseRenewalScheduler {
+
+	private static Logger logger = LoggerFactory.getLogger(LeaseRenewalScheduler.class);
+
+	private final Eureka lite;
+	private final EurekaLiteProperties liteProperties;
+
+	// registration key -> heartbeat state of the scheduled instance
+	private final RegistrationStore instances = new RegistrationStore();
+
+	private final ScheduledExecutorService ticker;
+	private final long intervalMillis;
+	private final long leaseExpirationMillis;
+	private final Timer lag;
+
+	private final Path snapshot;
+	private final ScheduledExecutorService snapshots;
+	private volatile long snapshotted = -1;
+	// registration key -> instance of the snapshot not claimed since startup
+	private final Map<String, Application> restored = new ConcurrentHashMap<>();
+
+	public LeaseRenewalScheduler(Eureka lite
+			, EurekaLiteProperties liteProperties
+			, EurekaInstanceConfigBean instanceConfig
+			, MeterRegistry meterRegistry) {
+		this.lite = lite;
+		this.liteProperties = liteProperties;
+		this.intervalMillis = TimeUnit.SECONDS.toMillis(Math.max(1, instanceConfig.getLeaseRenewalIntervalInSeconds()));
+		this.leaseExpirationMillis = TimeUnit.SECONDS.toMillis(instanceConfig.getLeaseExpirationDurationInSeconds());
+		this.lag = meterRegistry.timer("eureka.controller.heartbeat.lag");
+		meterRegistry.gauge("eureka.controller.heartbeat.instances", Tags.empty(), instances, RegistrationStore::size);
+		TimeGauge.builder("eureka.controller.heartbeat.margin", this, TimeUnit.MILLISECONDS
+				, LeaseRenewalScheduler::getWorstMarginMillis)
+				.description("Time left on the lease closest to expiring")
+				.register(meterRegistry);
+		this.snapshot = StringUtils.hasText(liteProperties.getSnapshotPath())
+				? Paths.get(liteProperties.getSnapshotPath())
+				: null;
+		if (snapshot != null) {
+			restore();
+			this.snapshots = Executors.newSingleThreadScheduledExecutor(r -> {
+				Thread thread = new Thread(r, "REGISTRATION_SNAPSHOT");
+				thread.setDaemon(true);
+				return thread;
+			});
+			int interval = Math.max(1, liteProperties.getSnapshotIntervalSeconds());
+			this.snapshots.scheduleWithFixedDelay(this::snapshot, interval, interval, TimeUnit.SECONDS);
+		} else {
+			this.snapshots = null;
+		}
+		this.ticker = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "LEASE_RENEWAL_TICKER"));
+		this.ticker.scheduleAtFixedRate(this::advance, 1, 1, TimeUnit.SECONDS);
+	}
+
+	@PreDestroy
+	public void destroy() {
+		logger.debug("Stopping lease renewal scheduler");
+		ticker.shutdownNow();
+		if (liteProperties.isUnregisterOnShutdown()) {
+			unregisterAll();
+		}
+		if (snapshots != null) {
+			snapshots.shutdownNow();
+			snapshot();
+		}
+	}
+
+	// the instances of the previous run, renewed from now on if eureka still holds them
+	private void restore() {
+		List<RegistrationSnapshot.Entry> entries;
+		try {
+			entries = RegistrationSnapshot.read(snapshot);
+		} catch (IOException | RuntimeException e) {
+			logger.warn("Could not read the registration snapshot {}, starting without it: {}"
+					, snapshot, e.getMessage());
+			return;
+		}
+		long now = System.currentTimeMillis();
+		int renewed = 0;
+		for (RegistrationSnapshot.Entry entry : entries) {
+			Application application = entry.getApplication();
+			restored.put(application.getRegistrationKey(), application);
+			// an expired lease may have been evicted, its instance is registered
+			// again by the reconciliation if it is still wanted
+			if (entry.getLastRenewed() + leaseExpirationMillis > now) {
+				lite.restoreInstanceInfo(application, entry.getLastDirty());
+				if (instances.restore(entry, firstDue()) != null) {
+					renewed++;
+				}
+			}
+		}
+		logger.info("Restored {} instances from {}, renewing the {} with a live lease"
+				, entries.size(), snapshot, renewed);
+	}
+
+	private void snapshot() {
+		long modifications = instances.getModifications();
+		if (modifications == snapshotted) {
+			return;
+		}
+		try {
+			RegistrationSnapshot.write(snapshot, instances.entries());
+			snapshotted = modifications;
+		} catch (IOException | RuntimeException e) {
+			logger.warn("Could not write the registration snapshot {}: {}", snapshot, e.getMessage());
+		}
+	}
+
+	/**
+	 * The instances restored from the snapshot that nothing scheduled since,
+	 * which stop being restored: another replica's now, or left behind.
+	 */
+	public List<Application> takeRestored() {
+		List<Application> unclaimed = new ArrayList<>();
+		for (String key : new ArrayList<>(restored.keySet())) {
+			Application application = restored.remove(key);
+			if (application != null) {
+				unclaimed.add(application);
+			}
+		}
+		return unclaimed;
+	}
+
+	public boolean hasRestored() {
+		return !restored.isEmpty();
+	}
+
+	// runs before the eureka transport is shut down, as this bean depends on it
+	private void unregisterAll() {
+		logger.debug("De-registering {} instances on shutdown", instances.size());
+		CompletableFuture<?>[] cancellations = instances.applications().stream()
+				.map(app -> lite.cancelAsync(app.getName(), app.getInstance_id()))
+				.toArray(CompletableFuture[]::new);
+		instances.clear();
+		try {
+			CompletableFuture.allOf(cancellations)
+					.get(liteProperties.getRequestTimeoutMillis(), TimeUnit.MILLISECONDS);
+		} catch (Exception e) {
+			logger.warn("Not all instances were de-registered on shutdown: {}", e.getMessage());
+		}
+	}
+
+	/**
+	 * Start renewing the lease of an instance, if it is not already scheduled.
+	 */
+	public synchronized void schedule(Application application) {
+		restored.remove(application.getRegistrationKey());
+		String key = instances.add(application, firstDue());
+		if (key != null) {
+			logger.debug("scheduled lease renewal of {}", key);
+		}
+	}
+
+	/**
+	 * Stop renewing the lease of an instance.
+	 */
+	public synchronized void unschedule(Application application) {
+		String key = application.getRegistrationKey();
+		restored.remove(key);
+		if (instances.remove(key)) {
+			logger.debug("unscheduled lease renewal of {}", key);
+		}
+	}
+
+	/**
+	 * Record the outcome of a registration, which starts a new lease.
+	 */
+	public void registered(Application application, boolean success) {
+		long dirty = success ? lite.getInstanceInfo(application).getLastDirtyTimestamp() : 0;
+		instances.record(application, success, dirty);
+	}
+
+	/**
+	 * Record the status eureka acknowledged for an instance.
+	 */
+	public void statusUpdated(Application application) {
+		instances.statusUpdated(application);
+	}
+
+	public boolean isScheduled(Application application) {
+		return instances.contains(application.getRegistrationKey());
+	}
+
+	public int size() {
+		return instances.size();
+	}
+
+	/**
+	 * Time left on the lease closest to expiring, as far as the heartbeats
+	 * acknowledged by eureka tell.
+	 */
+	public long getWorstMarginMillis() {
+		long oldest = instances.getOldestRenewal();
+		return oldest > 0 ? oldest + leaseExpirationMillis - System.currentTimeMillis() : leaseExpirationMillis;
+	}
+
+	// a random point of the first interval, which spreads the heartbeats of
+	// instances registered together over the whole interval
+	private long firstDue() {
+		return System.currentTimeMillis() + ThreadLocalRandom.current().nextLong(intervalMillis);
+	}
+
+	private void advance() {
+		for (Application application : instances.pollDue(System.currentTimeMillis())) {
+			renew(application);
+		}
+	}
+
+	private void renew(Application application) {
+		String key = application.getRegistrationKey();
+		long due = instances.getDue(key);
+		// how late this heartbeat is compared to one interval after the last renewal
+		long lastRenewed = instances.getLastRenewed(key);
+		long now = System.currentTimeMillis();
+		if (lastRenewed > 0) {
+			long behind = now - lastRenewed - intervalMillis;
+			lag.record(Math.max(0, behind), TimeUnit.MILLISECONDS);
+		}
+		// queued behind the heartbeats of leases expiring sooner
+		long expiresAt = lastRenewed > 0 ? lastRenewed + leaseExpirationMillis : now;
+		try {
+			lite.renewAsync(lite.getInstanceInfo(application), expiresAt, () -> instances.contains(key))
+					.whenComplete((renewed, e) -> {
+						boolean success = e == null && Boolean.TRUE.equals(renewed);
+						if (!success) {
+							logger.debug("lease renewal of {} was not acknowledged", key);
+						}
+						complete(key, success, due);
+					});
+		} catch (RuntimeException e) {
+			logger.warn("could not send heartbeat of {}: {}", key, e.getMessage());
+			complete(key, false, due);
+		}
+	}
+
+	// the next heartbeat is due one interval after this one was, keeping the
+	// spread, skipping the intervals a late heartbeat missed rather than
+	// catching up on them, or after a backoff doubling from one second if it failed
+	private void complete(String key, boolean success, long due) {
+		long next;
+		if (success) {
+			long now = System.currentTimeMillis();
+			next = due + intervalMillis;
+			if (next <= now) {
+				next += (now - next) / intervalMillis * intervalMillis + intervalMillis;
+			}
+		} else {
+			int failures = Math.min(instances.getFailures(key), 16);
+			next = System.currentTimeMillis() + Math.min(intervalMillis, TimeUnit.SECONDS.toMillis(1L << failures));
+		}
+		instances.complete(key, success, next);
+	}
+
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2012-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.agilehandy.k8s.lease;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import com.netflix.appinfo.InstanceInfo.InstanceStatus;
+import io.agilehandy.k8s.eureka.Application;
+
+/**
+ * Binary file holding the registration state of every instance, written
+ * periodically so a restarted controller resumes the heartbeats of the
+ * instances it had registered and cancels the ones nothing claims any more.
+ *
+ * The file is a header followed by one record per instance: its name,
+ * instance id, hostname, port and status, the status eureka last acknowledged,
+ * the time of its last renewal, its last dirty timestamp and its namespace. A new snapshot is
+ * written next to the file and moved over it, so a crash never leaves half a
+ * file.
+ *
+ * @author Haytham Mohamed
+ **/
+
+class RegistrationSnapshot {
+
+	private static final int MAGIC = 0x45524B53;
+	private static final int VERSION = 2;
+	// without the namespace, still read
+	private static final int VERSION_1 = 1;
+	private static final InstanceStatus[] STATUSES = InstanceStatus.values();
+
+	private RegistrationSnapshot() {
+	}
+
+	static void write(Path file, Collection<Entry> entries) throws IOException {
+		Path parent = file.toAbsolutePath().getParent();
+		if (parent != null) {
+			Files.createDirectories(parent);
+		}
+		Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(System.currentTimeMillis());
+			out.writeInt(entries.size());
+			for (Entry entry : entries) {
+				Application app = entry.getApplication();
+				out.writeUTF(app.getName());
+				out.writeUTF(app.getInstance_id());
+				out.writeUTF(app.getHostname());
+				out.writeInt(app.getPort());
+				out.writeByte(app.getStatus().ordinal());
+				out.writeByte(entry.getStatus().ordinal());
+				out.writeLong(entry.getLastRenewed());
+				out.writeLong(entry.getLastDirty());
+				out.writeUTF(app.getNamespace() != null ? app.getNamespace() : "");
+			}
+		}
+		Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * The entries of the snapshot, none if there is no file yet.
+	 */
+	static List<Entry> read(Path file) throws IOException {
+		List<Entry> entries = new ArrayList<>();
+		if (!Files.exists(file)) {
+			return entries;
+		}
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			int version = in.readInt() == MAGIC ? in.readInt() : -1;
+			if (version != VERSION && version != VERSION_1) {
+				throw new IOException("Not a registration snapshot of version " + VERSION + ": " + file);
+			}
+			in.readLong();
+			int count = in.readInt();
+			for (int i = 0; i < count; i++) {
+				String name = in.readUTF();
+				String instanceId = in.readUTF();
+				String hostname = in.readUTF();
+				int port = in.readInt();
+				InstanceStatus status = STATUSES[in.readByte()];
+				InstanceStatus acknowledged = STATUSES[in.readByte()];
+				long lastRenewed = in.readLong();
+				long lastDirty = in.readLong();
+				String namespace = version == VERSION_1 ? "" : in.readUTF();
+				Application app = new Application(name, instanceId, hostname, port, status
+						, namespace.isEmpty() ? null : namespace);
+				entries.add(new Entry(app, acknowledged, lastRenewed, lastDirty));
+			}
+		}
+		return entries;
+	}
+
+	/**
+	 * The state of one instance, as kept by the {@link RegistrationStore}.
+	 */
+	static class Entry {
+
+		private final Application application;
+		private final InstanceStatus status;
+		private final long lastRenewed;
+		private final long lastDirty;
+
+		Entry(Application application, InstanceStatus status, long lastRenewed, long lastDirty) {
+			this.application = application;
+			this.status = status;
+			this.lastRenewed = lastRenewed;
+			this.lastDirty = lastDirty;
+		}
+
+		Application getApplication() {
+			return application;
+		}
+
+		// the status eureka last acknowledged
+		InstanceStatus getStatus() {
+			return status;
+		}
+
+		long getLastRenewed() {
+			return lastRenewed;
+		}
+
+		long getLastDirty() {
+			return lastDirty;
+		}
+	}
+
+}
@@ -0,0 +1,531 @@
+/*
+ * Copyright 2012-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.agilehandy.k8s.lease;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.netflix.appinfo.InstanceInfo.InstanceStatus;
+import io.agilehandy.k8s.eureka.Application;
+
+/**
+ * State of every registered instance, kept in parallel primitive arrays
+ * indexed by an open addressing hash table on the registration key.
+ *
+ * A slot costs 46 bytes across the arrays, with compressed references, and
+ * the table is kept at most half full; there are no entry or wrapper objects
+ * per instance besides its key and application, and a lookup is a linear probe
+ * from the hash of the key. Removal shifts the following entries of the probe
+ * sequence back instead of leaving tombstones, so the table never degrades
+ * under churn. The key an instance was added with is the one kept, and handed
+ * out, for as long as it is registered.
+ *
+ * The instances waiting for their next heartbeat are also kept in a binary
+ * min-heap of slots ordered by when that heartbeat is due, so the due ones are
+ * taken off the top instead of looked for; an instance whose heartbeat is in
+ * flight is out of the heap until it completes. The instances renewed so far
+ * are in a second heap ordered by their last renewal, which keeps the oldest
+ * one at hand for the lease margin metric.
+ *
+ * All methods lock the store; at heartbeat rates the lock is rarely contended.
+ *
+ * @author Haytham Mohamed
+ **/
+
+class RegistrationStore {
+
+	private static final int MIN_CAPACITY = 16;
+	private static final InstanceStatus[] STATUSES = InstanceStatus.values();
+
+	private String[] keys;
+	private Application[] applications;
+	private long[] due;
+	private long[] lastRenewed;
+	private long[] lastDirty;
+	private int[] failures;
+	private byte[] statuses;
+	private boolean[] inFlight;
+	private int size;
+	// slots waiting for their heartbeat by due time, and renewed slots by last renewal
+	private SlotHeap queue;
+	private SlotHeap renewals;
+	// changes worth a new snapshot, the renewal times alone are not
+	private long modifications;
+
+	RegistrationStore() {
+		this(MIN_CAPACITY);
+	}
+
+	RegistrationStore(int expected) {
+		allocate(capacityFor(expected));
+	}
+
+	/**
+	 * Add an instance with its first heartbeat due at the given time, or
+	 * replace the application of one already added. Returns the key of a new
+	 * instance, {@code null} if it was already there.
+	 */
+	synchronized String add(Application application, long dueAt) {
+		String key = application.getRegistrationKey();
+		int index = indexOf(key);
+		if (index >= 0) {
+			if (changed(applications[index], application)) {
+				modifications++;
+			}
+			applications[index] = application;
+			return null;
+		}
+		if (2 * (size + 1) > keys.length) {
+			resize(keys.length * 2);
+		}
+		index = probe(key);
+		keys[index] = key;
+		applications[index] = application;
+		statuses[index] = (byte) InstanceStatus.UNKNOWN.ordinal();
+		size++;
+		enqueue(index, dueAt);
+		modifications++;
+		return key;
+	}
+
+	/**
+	 * Add an instance of a snapshot with the state it had, unless it was
+	 * added already. Returns the key of the new instance, or {@code null}.
+	 */
+	synchronized String restore(RegistrationSnapshot.Entry entry, long dueAt) {
+		String key = add(entry.getApplication(), dueAt);
+		if (key != null) {
+			int index = indexOf(key);
+			statuses[index] = (byte) entry.getStatus().ordinal();
+			renewed(index, entry.getLastRenewed());
+			lastDirty[index] = entry.getLastDirty();
+		}
+		return key;
+	}
+
+	/**
+	 * Remove an instance, returning whether it was there.
+	 */
+	synchronized boolean remove(String key) {
+		int index = indexOf(key);
+		if (index < 0) {
+			return false;
+		}
+		queue.remove(index);
+		renewals.remove(index);
+		delete(index);
+		size--;
+		modifications++;
+		return true;
+	}
+
+	synchronized boolean contains(String key) {
+		return indexOf(key) >= 0;
+	}
+
+	synchronized Application getApplication(String key) {
+		int index = indexOf(key);
+		return index < 0 ? null : applications[index];
+	}
+
+	synchronized long getLastRenewed(String key) {
+		int index = indexOf(key);
+		return index < 0 ? 0 : lastRenewed[index];
+	}
+
+	synchronized long getLastDirty(String key) {
+		int index = indexOf(key);
+		return index < 0 ? 0 : lastDirty[index];
+	}
+
+	/**
+	 * When the next heartbeat of the instance is, or was, due.
+	 */
+	synchronized long getDue(String key) {
+		int index = indexOf(key);
+		return index < 0 ? 0 : due[index];
+	}
+
+	synchronized int getFailures(String key) {
+		int index = indexOf(key);
+		return index < 0 ? 0 : failures[index];
+	}
+
+	/**
+	 * The status eureka last acknowledged, UNKNOWN until it acknowledged one.
+	 */
+	synchronized InstanceStatus getStatus(String key) {
+		int index = indexOf(key);
+		return index < 0 ? InstanceStatus.UNKNOWN : STATUSES[statuses[index]];
+	}
+
+	/**
+	 * Take the instances whose heartbeat is due by now off the heap, earliest
+	 * first, and mark their heartbeats in flight until {@link #complete}.
+	 */
+	synchronized List<Application> pollDue(long now) {
+		List<Application> polled = new ArrayList<>();
+		while (!queue.isEmpty() && due[queue.peek()] <= now) {
+			int index = queue.peek();
+			queue.remove(index);
+			inFlight[index] = true;
+			polled.add(applications[index]);
+		}
+		return polled;
+	}
+
+	/**
+	 * Record the outcome of a heartbeat and queue the next one.
+	 */
+	synchronized void complete(String key, boolean success, long nextDue) {
+		int index = indexOf(key);
+		if (index >= 0) {
+			inFlight[index] = false;
+			record(index, success);
+			enqueue(index, nextDue);
+		}
+	}
+
+	/**
+	 * The earliest last renewal of any instance renewed so far, 0 if none was.
+	 */
+	synchronized long getOldestRenewal() {
+		return renewals.isEmpty() ? 0 : lastRenewed[renewals.peek()];
+	}
+
+	/**
+	 * Record the outcome of a registration of the application, which starts a
+	 * new lease.
+	 */
+	synchronized void record(Application application, boolean success, long dirtyTimestamp) {
+		int index = indexOf(application.getRegistrationKey());
+		if (index >= 0) {
+			record(index, success);
+			if (success) {
+				statuses[index] = (byte) application.getStatus().ordinal();
+				lastDirty[index] = dirtyTimestamp;
+				modifications++;
+			}
+		}
+	}
+
+	/**
+	 * Record the status eureka acknowledged in a status update.
+	 */
+	synchronized void statusUpdated(Application application) {
+		int index = indexOf(application.getRegistrationKey());
+		if (index >= 0) {
+			statuses[index] = (byte) application.getStatus().ordinal();
+			modifications++;
+		}
+	}
+
+	private void record(int index, boolean success) {
+		if (success) {
+			renewed(index, System.currentTimeMillis());
+			failures[index] = 0;
+		} else {
+			failures[index]++;
+		}
+	}
+
+	private void renewed(int index, long at) {
+		lastRenewed[index] = at;
+		if (at > 0) {
+			renewals.offer(index);
+		}
+	}
+
+	synchronized List<Application> applications() {
+		List<Application> list = new ArrayList<>(size);
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] != null) {
+				list.add(applications[i]);
+			}
+		}
+		return list;
+	}
+
+	/**
+	 * The state of every instance, for a snapshot.
+	 */
+	synchronized List<RegistrationSnapshot.Entry> entries() {
+		List<RegistrationSnapshot.Entry> entries = new ArrayList<>(size);
+		for (int i = 0; i < keys.length; i++) {
+			if (keys[i] != null) {
+				entries.add(new RegistrationSnapshot.Entry(applications[i], STATUSES[statuses[i]]
+						, lastRenewed[i], lastDirty[i]));
+			}
+		}
+		return entries;
+	}
+
+	synchronized long getModifications() {
+		return modifications;
+	}
+
+	synchronized void clear() {
+		allocate(MIN_CAPACITY);
+		size = 0;
+		modifications++;
+	}
+
+	synchronized int size() {
+		return size;
+	}
+
+	private static boolean changed(Application previous, Application application) {
+		return previous.getPort() != application.getPort()
+				|| previous.getStatus() != application.getStatus()
+				|| !previous.getHostname().equals(application.getHostname());
+	}
+
+	// the slot holding the key, or -1
+	private int indexOf(String key) {
+		int mask = keys.length - 1;
+		for (int i = hash(key) & mask; keys[i] != null; i = (i + 1) & mask) {
+			if (keys[i].equals(key)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	// the first free slot of the key's probe sequence
+	private int probe(String key) {
+		int mask = keys.length - 1;
+		int i = hash(key) & mask;
+		while (keys[i] != null) {
+			i = (i + 1) & mask;
+		}
+		return i;
+	}
+
+	// backward shift deletion: move every later entry of the run whose home
+	// slot is not between the hole and itself into the hole
+	private void delete(int hole) {
+		int mask = keys.length - 1;
+		int i = hole;
+		while (true) {
+			i = (i + 1) & mask;
+			if (keys[i] == null) {
+				break;
+			}
+			int home = hash(keys[i]) & mask;
+			boolean stays = hole <= i ? (hole < home && home <= i) : (hole < home || home <= i);
+			if (!stays) {
+				move(i, hole);
+				hole = i;
+			}
+		}
+		clearSlot(hole);
+	}
+
+	private void move(int from, int to) {
+		keys[to] = keys[from];
+		applications[to] = applications[from];
+		due[to] = due[from];
+		queue.moved(from, to);
+		renewals.moved(from, to);
+		lastRenewed[to] = lastRenewed[from];
+		lastDirty[to] = lastDirty[from];
+		failures[to] = failures[from];
+		statuses[to] = statuses[from];
+		inFlight[to] = inFlight[from];
+	}
+
+	private void clearSlot(int index) {
+		keys[index] = null;
+		applications[index] = null;
+		due[index] = 0;
+		lastRenewed[index] = 0;
+		lastDirty[index] = 0;
+		failures[index] = 0;
+		statuses[index] = 0;
+		inFlight[index] = false;
+	}
+
+	private void resize(int capacity) {
+		String[] oldKeys = keys;
+		Application[] oldApplications = applications;
+		long[] oldDue = due;
+		SlotHeap oldQueue = queue;
+		long[] oldLastRenewed = lastRenewed;
+		long[] oldLastDirty = lastDirty;
+		int[] oldFailures = failures;
+		byte[] oldStatuses = statuses;
+		boolean[] oldInFlight = inFlight;
+		allocate(capacity);
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != null) {
+				int index = probe(oldKeys[i]);
+				keys[index] = oldKeys[i];
+				applications[index] = oldApplications[i];
+				due[index] = oldDue[i];
+				if (oldQueue.contains(i)) {
+					queue.offer(index);
+				}
+				renewed(index, oldLastRenewed[i]);
+				lastDirty[index] = oldLastDirty[i];
+				failures[index] = oldFailures[i];
+				statuses[index] = oldStatuses[i];
+				inFlight[index] = oldInFlight[i];
+			}
+		}
+	}
+
+	private void allocate(int capacity) {
+		keys = new String[capacity];
+		applications = new Application[capacity];
+		due = new long[capacity];
+		lastRenewed = new long[capacity];
+		lastDirty = new long[capacity];
+		failures = new int[capacity];
+		statuses = new byte[capacity];
+		inFlight = new boolean[capacity];
+		queue = new SlotHeap(due, capacity);
+		renewals = new SlotHeap(lastRenewed, capacity);
+	}
+
+	// put a slot in the queue, or move it there, with its new due time
+	private void enqueue(int index, long dueAt) {
+		due[index] = dueAt;
+		queue.offer(index);
+	}
+
+	// a power of two holding the expected instances at most half full
+	private static int capacityFor(int expected) {
+		int capacity = MIN_CAPACITY;
+		while (capacity < 2 * expected) {
+			capacity <<= 1;
+		}
+		return capacity;
+	}
+
+	// spread the string hash, whose low bits alone cluster for similar keys
+	private static int hash(String key) {
+		int h = key.hashCode() * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * Binary min-heap of slots ordered by a time the store keeps per slot. A
+	 * slot's time is only changed through {@link #offer}, which restores the
+	 * order, or while the slot is out of the heap.
+	 */
+	private static final class SlotHeap {
+
+		private final long[] times;
+		private final int[] slots;
+		// position in the heap plus one, 0 while not in the heap
+		private final int[] positions;
+		private int size;
+
+		SlotHeap(long[] times, int capacity) {
+			this.times = times;
+			this.slots = new int[capacity];
+			this.positions = new int[capacity];
+		}
+
+		boolean isEmpty() {
+			return size == 0;
+		}
+
+		// the slot with the earliest time
+		int peek() {
+			return slots[0];
+		}
+
+		boolean contains(int index) {
+			return positions[index] > 0;
+		}
+
+		// put a slot in the heap, or move it to its place for its new time
+		void offer(int index) {
+			int position = positions[index] - 1;
+			if (position < 0) {
+				slots[size] = index;
+				positions[index] = ++size;
+				siftUp(size - 1);
+			} else {
+				siftDown(position);
+				siftUp(positions[index] - 1);
+			}
+		}
+
+		void remove(int index) {
+			int position = positions[index] - 1;
+			if (position < 0) {
+				return;
+			}
+			positions[index] = 0;
+			int last = slots[--size];
+			if (position < size) {
+				slots[position] = last;
+				positions[last] = position + 1;
+				siftDown(position);
+				siftUp(positions[last] - 1);
+			}
+		}
+
+		// the store moved a slot's entry
+		void moved(int from, int to) {
+			positions[to] = positions[from];
+			positions[from] = 0;
+			if (positions[to] > 0) {
+				slots[positions[to] - 1] = to;
+			}
+		}
+
+		private void siftUp(int position) {
+			int index = slots[position];
+			while (position > 0) {
+				int parent = (position - 1) >>> 1;
+				if (times[slots[parent]] <= times[index]) {
+					break;
+				}
+				place(slots[parent], position);
+				position = parent;
+			}
+			place(index, position);
+		}
+
+		private void siftDown(int position) {
+			int index = slots[position];
+			while (true) {
+				int child = 2 * position + 1;
+				if (child >= size) {
+					break;
+				}
+				if (child + 1 < size && times[slots[child + 1]] < times[slots[child]]) {
+					child++;
+				}
+				if (times[index] <= times[slots[child]]) {
+					break;
+				}
+				place(slots[child], position);
+				position = child;
+			}
+			place(index, position);
+		}
+
+		private void place(int index, int position) {
+			slots[position] = index;
+			positions[index] = position + 1;
+		}
+	}
+
+}
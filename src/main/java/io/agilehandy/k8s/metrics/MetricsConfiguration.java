@@ -0,0 +1,47 @@
+/*
+ * Copyright 2012-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.agilehandy.k8s.metrics;
+
+import io.agilehandy.k8s.common.InformerProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * @author Haytham Mohamed
+ **/
+
+@Configuration
+public class MetricsConfiguration {
+
+	@Bean
+	@ConditionalOnMissingBean(MeterRegistry.class)
+	public PrometheusMeterRegistry prometheusMeterRegistry() {
+		return new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+	}
+
+	@Bean(destroyMethod = "stop")
+	public MetricsEndpoint metricsEndpoint(PrometheusMeterRegistry registry, InformerProperties properties) {
+		MetricsEndpoint endpoint = new MetricsEndpoint(registry, properties.getMetricsPort());
+		endpoint.start();
+		return endpoint;
+	}
+
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2012-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.agilehandy.k8s.metrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Serves the prometheus scrape of the controller metrics on /metrics from the
+ * JDK http server, the controller itself runs without a web server.
+ *
+ * @author Haytham Mohamed
+ **/
+public class MetricsEndpoint {
+
+	private static Logger logger = LoggerFactory.getLogger(MetricsEndpoint.class);
+
+	private final PrometheusMeterRegistry registry;
+	private final int port;
+	private HttpServer server;
+
+	public MetricsEndpoint(PrometheusMeterRegistry registry, int port) {
+		this.registry = registry;
+		this.port = port;
+	}
+
+	public void start() {
+		if (port <= 0) {
+			logger.debug("Metrics endpoint is disabled");
+			return;
+		}
+		try {
+			server = HttpServer.create(new InetSocketAddress(port), 0);
+			server.createContext("/metrics", exchange -> {
+				byte[] body = registry.scrape().getBytes(StandardCharsets.UTF_8);
+				exchange.getResponseHeaders().add("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+				exchange.sendResponseHeaders(200, body.length);
+				try (OutputStream out = exchange.getResponseBody()) {
+					out.write(body);
+				}
+			});
+			server.start();
+			logger.debug("Metrics endpoint listening on port {}", port);
+		} catch (IOException e) {
+			logger.warn("Could not start the metrics endpoint on port {}: {}", port, e.getMessage());
+		}
+	}
+
+	public void stop() {
+		if (server != null) {
+			server.stop(0);
+		}
+	}
+}
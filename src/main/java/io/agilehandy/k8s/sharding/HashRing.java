@@ -0,0 +1,83 @@
+/*
+ * Copyright 2012-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.agilehandy.k8s.sharding;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Consistent hash ring assigning keys to members. Every member is placed on
+ * the ring at a number of virtual points and owns the keys hashing up to each
+ * of them, so when a member joins or leaves only the keys of that member move.
+ *
+ * @author Haytham Mohamed
+ **/
+
+public final class HashRing {
+
+	private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	private final Set<String> members;
+	private final NavigableMap<Long, String> ring = new TreeMap<>();
+
+	public HashRing(Collection<String> members, int virtualNodes) {
+		this.members = Collections.unmodifiableSet(new TreeSet<>(members));
+		for (String member : this.members) {
+			for (int i = 0; i < Math.max(1, virtualNodes); i++) {
+				// on a collision the smaller member wins, whatever the order of joining
+				ring.merge(hash(member + "#" + i), member, (a, b) -> a.compareTo(b) <= 0 ? a : b);
+			}
+		}
+	}
+
+	public Set<String> getMembers() {
+		return members;
+	}
+
+	/**
+	 * The member owning a key, {@code null} if the ring is empty.
+	 */
+	public String owner(String key) {
+		if (ring.isEmpty()) {
+			return null;
+		}
+		Map.Entry<Long, String> entry = ring.ceilingEntry(hash(key));
+		return entry != null ? entry.getValue() : ring.firstEntry().getValue();
+	}
+
+	// 64 bit FNV-1a, with a final mix as FNV alone spreads similar keys poorly
+	static long hash(String key) {
+		long hash = FNV_OFFSET;
+		for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+			hash ^= b & 0xff;
+			hash *= FNV_PRIME;
+		}
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+
+}
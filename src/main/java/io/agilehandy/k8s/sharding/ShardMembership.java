@@ -0,0 +1,256 @@
+/*
+ * Copyright 2012-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.agilehandy.k8s.sharding;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PreDestroy;
+
+import io.agilehandy.k8s.common.Util;
+import io.fabric8.kubernetes.api.model.coordination.v1.DoneableLease;
+import io.fabric8.kubernetes.api.model.coordination.v1.Lease;
+import io.fabric8.kubernetes.api.model.coordination.v1.LeaseBuilder;
+import io.fabric8.kubernetes.api.model.coordination.v1.LeaseList;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.KubernetesClientException;
+import io.fabric8.kubernetes.client.dsl.NonNamespaceOperation;
+import io.fabric8.kubernetes.client.dsl.Resource;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+/**
+ * Splits the endpoints between the replicas of the controller. Every replica
+ * renews a Lease of its own, labeled with the group, and lists the leases of
+ * the group to learn the live replicas; endpoints are assigned to them on a
+ * {@link HashRing} by their namespace/name key. When a replica joins or leaves,
+ * the listeners are called so the endpoints can change hands.
+ *
+ * A replica counts as live while its lease keeps being renewed, as observed
+ * with the local clock, so the clocks of the replicas need not agree.
+ *
+ * @author Haytham Mohamed
+ **/
+
+@Component
+public class ShardMembership {
+
+	private static Logger logger = LoggerFactory.getLogger(ShardMembership.class);
+
+	static final String GROUP_LABEL = "cloud.spring.io/eureka-controller-group";
+
+	// leases expired for this many lease durations are deleted by any replica
+	private static final int EXPIRED_LEASE_DURATIONS = 3;
+
+	private final KubernetesClient client;
+	private final ShardingProperties properties;
+	private final String identity;
+	private final String namespace;
+	private final String leaseName;
+	private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+	// replica -> last renew time of its lease and when it was seen to change
+	private final Map<String, Observation> observations = new HashMap<>();
+	private final Counter rebalances;
+
+	private volatile HashRing ring;
+	private ScheduledExecutorService scheduler;
+
+	public ShardMembership(KubernetesClient client, ShardingProperties properties, MeterRegistry meterRegistry) {
+		this.client = client;
+		this.properties = properties;
+		this.identity = Util.identity(properties.getIdentity());
+		this.namespace = StringUtils.hasText(properties.getLeaseNamespace()) ? properties.getLeaseNamespace()
+				: client.getNamespace() != null ? client.getNamespace() : "default";
+		this.leaseName = properties.getGroup() + "-" + identity;
+		this.ring = new HashRing(Collections.singleton(identity), properties.getVirtualNodes());
+		this.rebalances = meterRegistry.counter("eureka.controller.shard.rebalances");
+		meterRegistry.gauge("eureka.controller.shard.members", Tags.empty(), this
+				, membership -> membership.getMembers().size());
+	}
+
+	public String getIdentity() {
+		return identity;
+	}
+
+	public Set<String> getMembers() {
+		return ring.getMembers();
+	}
+
+	/**
+	 * Whether this replica is in charge of the endpoints with this
+	 * namespace/name key, always the case without sharding.
+	 */
+	public boolean owns(String key) {
+		return !properties.isEnabled() || identity.equals(ring.owner(key));
+	}
+
+	/**
+	 * Called on the membership thread every time the replicas change.
+	 */
+	public void addListener(Runnable listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * Join the group and learn its current members before returning, so this
+	 * replica starts out with its own share of the endpoints.
+	 */
+	public synchronized void start() {
+		if (!properties.isEnabled() || scheduler != null) {
+			return;
+		}
+		logger.info("Joining shard group {} as {}", properties.getGroup(), identity);
+		scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "SHARD_MEMBERSHIP");
+			thread.setDaemon(true);
+			return thread;
+		});
+		refresh();
+		scheduler.scheduleWithFixedDelay(this::refresh, properties.getRenewIntervalSeconds()
+				, properties.getRenewIntervalSeconds(), TimeUnit.SECONDS);
+	}
+
+	@PreDestroy
+	public synchronized void stop() {
+		if (scheduler == null) {
+			return;
+		}
+		scheduler.shutdownNow();
+		scheduler = null;
+		// leave at once, rather than once the lease expires
+		try {
+			leases().withName(leaseName).delete();
+		} catch (KubernetesClientException e) {
+			logger.warn("Could not delete lease {}: {}", leaseName, e.getMessage());
+		}
+	}
+
+	void refresh() {
+		try {
+			renew();
+			update(members());
+		} catch (RuntimeException e) {
+			// the others drop this replica once its lease expires, until then
+			// their shares and this one's overlap rather than leave a gap
+			logger.warn("Could not refresh the shard membership: {}", e.getMessage());
+		}
+	}
+
+	private void renew() {
+		ZonedDateTime now = ZonedDateTime.now();
+		Lease lease = leases().withName(leaseName).get();
+		if (lease == null) {
+			leases().create(new LeaseBuilder()
+					.withNewMetadata()
+						.withName(leaseName)
+						.withNamespace(namespace)
+						.addToLabels(GROUP_LABEL, properties.getGroup())
+					.endMetadata()
+					.withNewSpec()
+						.withHolderIdentity(identity)
+						.withLeaseDurationSeconds(properties.getLeaseDurationSeconds())
+						.withAcquireTime(now)
+						.withRenewTime(now)
+					.endSpec()
+					.build());
+		} else {
+			lease.getSpec().setRenewTime(now);
+			leases().withName(leaseName).replace(lease);
+		}
+	}
+
+	private Set<String> members() {
+		long now = System.nanoTime();
+		Set<String> members = new TreeSet<>();
+		members.add(identity);
+		Set<String> seen = new HashSet<>();
+		for (Lease lease : leases().withLabel(GROUP_LABEL, properties.getGroup()).list().getItems()) {
+			String holder = lease.getSpec() == null ? null : lease.getSpec().getHolderIdentity();
+			if (holder == null || holder.equals(identity)) {
+				continue;
+			}
+			seen.add(holder);
+			long duration = TimeUnit.SECONDS.toNanos(lease.getSpec().getLeaseDurationSeconds() != null
+					? lease.getSpec().getLeaseDurationSeconds() : properties.getLeaseDurationSeconds());
+			long renewed = observe(holder, lease.getSpec().getRenewTime(), now);
+			if (now - renewed < duration) {
+				members.add(holder);
+			} else if (now - renewed > EXPIRED_LEASE_DURATIONS * duration) {
+				logger.debug("Deleting the expired lease of replica {}", holder);
+				leases().withName(lease.getMetadata().getName()).delete();
+			}
+		}
+		observations.keySet().retainAll(seen);
+		return members;
+	}
+
+	// when a replica last renewed its lease, in local nanoTime
+	private long observe(String holder, ZonedDateTime renewTime, long now) {
+		Observation observation = observations.get(holder);
+		if (observation == null || !String.valueOf(renewTime).equals(observation.renewTime)) {
+			// the first time round trust the renew time as far as it goes,
+			// afterwards only that it changed
+			long age = observation != null || renewTime == null ? 0
+					: Math.max(0, Duration.between(renewTime, ZonedDateTime.now()).toNanos());
+			observation = new Observation(String.valueOf(renewTime), now - age);
+			observations.put(holder, observation);
+		}
+		return observation.at;
+	}
+
+	private void update(Set<String> members) {
+		if (members.equals(ring.getMembers())) {
+			return;
+		}
+		logger.info("Shard group {} changed from {} to {}", properties.getGroup(), ring.getMembers(), members);
+		ring = new HashRing(members, properties.getVirtualNodes());
+		rebalances.increment();
+		listeners.forEach(Runnable::run);
+	}
+
+	private NonNamespaceOperation<Lease, LeaseList, DoneableLease, Resource<Lease, DoneableLease>> leases() {
+		return client.leases().inNamespace(namespace);
+	}
+
+	private static class Observation {
+
+		private final String renewTime;
+		private final long at;
+
+		Observation(String renewTime, long at) {
+			this.renewTime = renewTime;
+			this.at = at;
+		}
+	}
+
+}
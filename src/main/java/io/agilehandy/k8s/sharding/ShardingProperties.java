@@ -0,0 +1,102 @@
+/*
+ * Copyright 2012-2019 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.agilehandy.k8s.sharding;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * @author Haytham Mohamed
+ **/
+
+@ConfigurationProperties("eureka.k8s.sharding")
+public class ShardingProperties {
+
+	// split the endpoints between the replicas of the controller
+	private boolean enabled = false;
+
+	// name of this replica, the pod name by default
+	private String identity;
+
+	// replicas sharing their endpoints carry the same group in their lease
+	private String group = "springcloud-eureka-controller";
+
+	// namespace of the membership leases, the namespace of the client by default
+	private String leaseNamespace;
+
+	// a replica whose lease was not renewed for this long leaves the group
+	private int leaseDurationSeconds = 15;
+
+	private int renewIntervalSeconds = 5;
+
+	// points of every replica on the hash ring, more spread the endpoints more evenly
+	private int virtualNodes = 128;
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	public String getIdentity() {
+		return identity;
+	}
+
+	public void setIdentity(String identity) {
+		this.identity = identity;
+	}
+
+	public String getGroup() {
+		return group;
+	}
+
+	public void setGroup(String group) {
+		this.group = group;
+	}
+
+	public String getLeaseNamespace() {
+		return leaseNamespace;
+	}
+
+	public void setLeaseNamespace(String leaseNamespace) {
+		this.leaseNamespace = leaseNamespace;
+	}
+
+	public int getLeaseDurationSeconds() {
+		return leaseDurationSeconds;
+	}
+
+	public void setLeaseDurationSeconds(int leaseDurationSeconds) {
+		this.leaseDurationSeconds = leaseDurationSeconds;
+	}
+
+	public int getRenewIntervalSeconds() {
+		return renewIntervalSeconds;
+	}
+
+	public void setRenewIntervalSeconds(int renewIntervalSeconds) {
+		this.renewIntervalSeconds = renewIntervalSeconds;
+	}
+
+	public int getVirtualNodes() {
+		return virtualNodes;
+	}
+
+	public void setVirtualNodes(int virtualNodes) {
+		this.virtualNodes = virtualNodes;
+	}
+}
@@ -0,0 +1,59 @@
+package io.agilehandy.k8s.benchmark;
+
+import io.agilehandy.k8s.common.InformerProperties;
+import io.agilehandy.k8s.endpoints.EndpointsCache;
+import io.agilehandy.k8s.endpoints.EndpointsController;
+import io.agilehandy.k8s.endpoints.EndpointsEureka;
+import io.agilehandy.k8s.endpoints.EndpointsEventHandler;
+import io.agilehandy.k8s.eureka.EurekaLiteProperties;
+import io.agilehandy.k8s.eureka.StubEureka;
+import io.agilehandy.k8s.lease.LeaseRenewalScheduler;
+import io.fabric8.kubernetes.api.model.Endpoints;
+import io.fabric8.kubernetes.client.informers.cache.Cache;
+import io.fabric8.kubernetes.client.informers.cache.Lister;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.springframework.cloud.commons.util.InetUtils;
+import org.springframework.cloud.commons.util.InetUtilsProperties;
+import org.springframework.cloud.netflix.eureka.EurekaInstanceConfigBean;
+
+/**
+ * The controller components wired by hand, without a Spring context or a
+ * Kubernetes API server, talking to a {@link StubEureka}. The informer cache
+ * is a plain {@link Cache} that benchmarks fill themselves, and the
+ * controller's workers are not started, so reconciliations only run when a
+ * benchmark calls them.
+ *
+ * @author Haytham Mohamed
+ */
+public class ControllerFixture {
+
+	public final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+	public final InformerProperties properties = new InformerProperties();
+	public final EurekaLiteProperties liteProperties = new EurekaLiteProperties();
+	public final StubEureka eureka;
+	public final LeaseRenewalScheduler scheduler;
+	public final EndpointsEureka registrar;
+	public final Cache<Endpoints> indexer = new Cache<>();
+	public final EndpointsController<Endpoints> controller;
+	public final EndpointsCache cache;
+	public final EndpointsEventHandler<Endpoints> handler;
+
+	public ControllerFixture() {
+		this.eureka = new StubEureka(liteProperties, meterRegistry);
+		this.scheduler = new LeaseRenewalScheduler(eureka, liteProperties
+				, new EurekaInstanceConfigBean(new InetUtils(new InetUtilsProperties())), meterRegistry);
+		this.registrar = new EndpointsEureka(eureka, properties, scheduler);
+		this.controller = new EndpointsController<>("default", registrar, new Lister<>(indexer, "default")
+				, registrar::getRegisteredApplications, key -> true, properties, meterRegistry);
+		this.cache = new EndpointsCache(null, properties, meterRegistry);
+		this.handler = new EndpointsEventHandler<>(controller, properties, cache, meterRegistry);
+	}
+
+	public void close() {
+		controller.stop();
+		scheduler.destroy();
+		eureka.shutdown();
+	}
+}
@@ -0,0 +1,64 @@
+package io.agilehandy.k8s.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import io.fabric8.kubernetes.api.model.Endpoints;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Cost of the endpoints cache lookups done for every informer event, with
+ * {@code size} other endpoints already cached.
+ *
+ * @author Haytham Mohamed
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class EndpointsCacheBenchmark {
+
+	@Param({"100", "10000"})
+	int size;
+
+	ControllerFixture fixture;
+	Endpoints cached;
+	Endpoints updated;
+
+	@Setup
+	public void setup() {
+		fixture = new ControllerFixture();
+		for (int i = 0; i < size; i++) {
+			fixture.cache.addToCache(SyntheticEndpoints.endpoints("svc-" + i, 1, 1));
+		}
+		cached = SyntheticEndpoints.endpoints("svc-" + (size / 2), 1, 1);
+		updated = SyntheticEndpoints.endpoints("svc-" + (size / 2), 1, 2);
+	}
+
+	@TearDown
+	public void tearDown() {
+		fixture.close();
+	}
+
+	@Benchmark
+	public boolean exists() {
+		return fixture.cache.exists(cached);
+	}
+
+	@Benchmark
+	public boolean updateExisting() {
+		return fixture.cache.updateExisting(cached, updated);
+	}
+
+	@Benchmark
+	public void replace() {
+		fixture.cache.replace(cached, updated);
+	}
+
+}
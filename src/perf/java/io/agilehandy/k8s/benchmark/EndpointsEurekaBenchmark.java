@@ -0,0 +1,50 @@
+package io.agilehandy.k8s.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import io.agilehandy.k8s.eureka.Application;
+import io.fabric8.kubernetes.api.model.Endpoints;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Cost of turning an endpoints object into applications.
+ *
+ * @author Haytham Mohamed
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class EndpointsEurekaBenchmark {
+
+	@Param({"1", "10", "100", "1000"})
+	int addresses;
+
+	ControllerFixture fixture;
+	Endpoints endpoints;
+
+	@Setup
+	public void setup() {
+		fixture = new ControllerFixture();
+		endpoints = SyntheticEndpoints.endpoints("svc", addresses, 1);
+	}
+
+	@TearDown
+	public void tearDown() {
+		fixture.close();
+	}
+
+	@Benchmark
+	public List<Application> getApplications() {
+		return fixture.registrar.getApplications(endpoints);
+	}
+
+}
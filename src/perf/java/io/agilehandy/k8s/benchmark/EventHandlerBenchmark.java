@@ -0,0 +1,62 @@
+package io.agilehandy.k8s.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import io.fabric8.kubernetes.api.model.Endpoints;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Cost of the informer update callback for a service of {@code addresses} pods,
+ * for a resync (same version) and for a change replacing one pod.
+ *
+ * @author Haytham Mohamed
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class EventHandlerBenchmark {
+
+	@Param({"1", "10", "100", "1000"})
+	int addresses;
+
+	ControllerFixture fixture;
+	Endpoints current;
+	Endpoints resynced;
+	Endpoints changed;
+
+	@Setup
+	public void setup() {
+		fixture = new ControllerFixture();
+		current = SyntheticEndpoints.endpoints("svc", addresses, 1);
+		resynced = SyntheticEndpoints.endpoints("svc", addresses, 1);
+		changed = SyntheticEndpoints.endpoints("svc", addresses, 2, 1);
+		fixture.handler.onAdd(current);
+	}
+
+	@TearDown
+	public void tearDown() {
+		fixture.close();
+	}
+
+	@Benchmark
+	public void onUpdateResync() {
+		fixture.handler.onUpdate(current, resynced);
+	}
+
+	// alternates between the two generations; the handler only queues the
+	// key, see EndpointsControllerBenchmark for the reconciliation itself
+	@Benchmark
+	public void onUpdateChanged() {
+		fixture.handler.onUpdate(current, changed);
+		fixture.handler.onUpdate(changed, current);
+	}
+
+}
@@ -0,0 +1,50 @@
+package io.agilehandy.k8s.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import com.netflix.appinfo.InstanceInfo;
+import io.agilehandy.k8s.eureka.Application;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Cost of the instance info of an application, cached against built from scratch.
+ *
+ * @author Haytham Mohamed
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class InstanceInfoBenchmark {
+
+	ControllerFixture fixture;
+	Application application;
+
+	@Setup
+	public void setup() {
+		fixture = new ControllerFixture();
+		application = new Application("svc", "svc-pod-1", "10.0.0.1", 8080);
+	}
+
+	@TearDown
+	public void tearDown() {
+		fixture.close();
+	}
+
+	@Benchmark
+	public InstanceInfo cached() {
+		return fixture.eureka.getInstanceInfo(application);
+	}
+
+	@Benchmark
+	public InstanceInfo build() {
+		return fixture.eureka.buildInstanceInfo(application);
+	}
+
+}
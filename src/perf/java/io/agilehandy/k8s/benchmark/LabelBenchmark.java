@@ -0,0 +1,45 @@
+package io.agilehandy.k8s.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import io.agilehandy.k8s.common.Util;
+import io.fabric8.kubernetes.api.model.ObjectMeta;
+import io.fabric8.kubernetes.api.model.ObjectMetaBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Cost of the label check done for every informer event.
+ *
+ * @author Haytham Mohamed
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class LabelBenchmark {
+
+	ObjectMeta labeled;
+	ObjectMeta unlabeled;
+
+	@Setup
+	public void setup() {
+		labeled = new ObjectMetaBuilder().withLabels(SyntheticEndpoints.labels()).build();
+		unlabeled = new ObjectMetaBuilder().build();
+	}
+
+	@Benchmark
+	public boolean enabled() {
+		return Util.isEnabledLabel(labeled, SyntheticEndpoints.LABEL_ENABLED);
+	}
+
+	@Benchmark
+	public boolean missing() {
+		return Util.isEnabledLabel(unlabeled, SyntheticEndpoints.LABEL_ENABLED);
+	}
+
+}
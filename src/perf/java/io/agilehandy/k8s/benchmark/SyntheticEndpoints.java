@@ -0,0 +1,149 @@
+package io.agilehandy.k8s.benchmark;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.fabric8.kubernetes.api.model.EndpointAddress;
+import io.fabric8.kubernetes.api.model.EndpointAddressBuilder;
+import io.fabric8.kubernetes.api.model.Endpoints;
+import io.fabric8.kubernetes.api.model.EndpointsBuilder;
+import io.fabric8.kubernetes.api.model.discovery.Endpoint;
+import io.fabric8.kubernetes.api.model.discovery.EndpointBuilder;
+import io.fabric8.kubernetes.api.model.discovery.EndpointSlice;
+import io.fabric8.kubernetes.api.model.discovery.EndpointSliceBuilder;
+
+/**
+ * Builds enabled and registrable {@link Endpoints} objects, or the
+ * {@link EndpointSlice}s of a service, with any number of addresses, each
+ * backed by a distinct pod.
+ *
+ * @author Haytham Mohamed
+ */
+public final class SyntheticEndpoints {
+
+	public static final String LABEL_ENABLED = "cloud.spring.io/enabled";
+	public static final String LABEL_REGISTER = "cloud.spring.io/register";
+
+	private SyntheticEndpoints() {
+	}
+
+	public static Endpoints endpoints(String name, int addresses, int version) {
+		return endpoints(name, addresses, version, 0);
+	}
+
+	/**
+	 * @param generation shifts the pod identities, so two generations of the
+	 * same service share all but {@code generation} of their addresses
+	 */
+	public static Endpoints endpoints(String name, int addresses, int version, int generation) {
+		return endpoints("default", name, addresses, version, generation);
+	}
+
+	public static Endpoints endpoints(String namespace, String name, int addresses, int version, int generation) {
+		return endpoints(namespace, name, addresses, version, generation, 0);
+	}
+
+	/**
+	 * @param notReady the first pods of the generation, which are listed as
+	 * not ready addresses
+	 */
+	public static Endpoints endpoints(String namespace, String name, int addresses, int version, int generation
+			, int notReady) {
+		List<EndpointAddress> ready = new ArrayList<>(addresses);
+		List<EndpointAddress> unready = new ArrayList<>(notReady);
+		for (int i = generation; i < addresses + generation; i++) {
+			(i < generation + notReady ? unready : ready).add(new EndpointAddressBuilder()
+					.withIp(ip(i))
+					.withNewTargetRef()
+						.withKind("Pod")
+						.withName(name + "-" + i)
+						.withUid(name + "-pod-" + i)
+					.endTargetRef()
+					.build());
+		}
+		return new EndpointsBuilder()
+				.withNewMetadata()
+					.withName(name)
+					.withNamespace(namespace)
+					.withUid(name + "-uid")
+					.withResourceVersion(String.valueOf(version))
+					.withLabels(labels())
+				.endMetadata()
+				.addNewSubset()
+					.withAddresses(ready)
+					.withNotReadyAddresses(unready)
+					.addNewPort()
+						.withName("http")
+						.withPort(8080)
+					.endPort()
+				.endSubset()
+				.build();
+	}
+
+	/**
+	 * Slice {@code index} of a service of {@code addresses} pods, holding the
+	 * pods of the slots from {@code index * sliceSize}. Generation {@code g}
+	 * holds the same pods as {@link #endpoints} does, and differs from the one
+	 * before in slot {@code g - 1} only, so in a single slice.
+	 */
+	public static EndpointSlice slice(String namespace, String name, int addresses, int sliceSize
+			, int index, int generation) {
+		return slice(namespace, name, addresses, sliceSize, index, generation, 0);
+	}
+
+	/**
+	 * @param notReady the first pods of the generation, whose ready condition
+	 * is false
+	 */
+	public static EndpointSlice slice(String namespace, String name, int addresses, int sliceSize
+			, int index, int generation, int notReady) {
+		List<Endpoint> list = new ArrayList<>(sliceSize);
+		for (int slot = index * sliceSize; slot < Math.min(addresses, (index + 1) * sliceSize); slot++) {
+			int i = generation + Math.floorMod(slot - generation, addresses);
+			list.add(new EndpointBuilder()
+					.withAddresses(ip(i))
+					.withNewConditions(i >= generation + notReady)
+					.withNewTargetRef()
+						.withKind("Pod")
+						.withName(name + "-" + i)
+						.withUid(name + "-pod-" + i)
+					.endTargetRef()
+					.build());
+		}
+		Map<String, String> labels = labels();
+		labels.put("kubernetes.io/service-name", name);
+		return new EndpointSliceBuilder()
+				.withApiVersion("discovery.k8s.io/v1beta1")
+				.withNewMetadata()
+					.withName(name + "-" + index)
+					.withNamespace(namespace)
+					.withUid(name + "-" + index + "-uid")
+					.withLabels(labels)
+				.endMetadata()
+				.withAddressType("IPv4")
+				.withEndpoints(list)
+				.addNewPort()
+					.withName("http")
+					.withPort(8080)
+				.endPort()
+				.build();
+	}
+
+	public static int slices(int addresses, int sliceSize) {
+		return (addresses + sliceSize - 1) / sliceSize;
+	}
+
+	private static String ip(int i) {
+		return "10." + ((i >> 16) & 0xff) + "." + ((i >> 8) & 0xff) + "." + (i & 0xff);
+	}
+
+	public static Map<String, String> labels() {
+		Map<String, String> labels = new HashMap<>();
+		labels.put(LABEL_ENABLED, "true");
+		labels.put(LABEL_REGISTER, "true");
+		labels.put("app", "synthetic");
+		return labels;
+	}
+}
@@ -0,0 +1,321 @@
+package io.agilehandy.k8s.eureka;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.netflix.appinfo.InstanceInfo;
+import com.netflix.discovery.converters.wrappers.CodecWrapper;
+import com.netflix.discovery.converters.wrappers.CodecWrappers;
+import com.netflix.discovery.shared.Application;
+import com.netflix.discovery.shared.Applications;
+import okhttp3.HttpUrl;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+/**
+ * In-process stand-in for a Eureka server, speaking enough of the REST API
+ * for the controller: register, renew, cancel, status update, the full
+ * registry and its delta. Every request can be delayed and failed at random
+ * to model a slow or unhealthy peer. Each client connection is served by
+ * its own thread, so the delay does not hold up other connections.
+ *
+ * Peers of a server share its registry and counters, as if they replicated
+ * every change at once, and only count the requests they served themselves.
+ *
+ * @author Haytham Mohamed
+ */
+public class FakeEurekaServer extends Dispatcher {
+
+	/**
+	 * Called when a register, renew, cancel or status request succeeds.
+	 */
+	public interface RequestListener {
+		void onRequest(String operation, String appName, String id);
+	}
+
+	// same as eureka's default retention of the recently changed queue
+	private static final long DELTA_RETENTION_MILLIS = TimeUnit.MINUTES.toMillis(3);
+
+	// mock web server logs every request at INFO
+	private static final Logger MOCK_SERVER_LOGGER = Logger.getLogger(MockWebServer.class.getName());
+
+	static {
+		MOCK_SERVER_LOGGER.setLevel(Level.WARNING);
+	}
+
+	private final MockWebServer server = new MockWebServer();
+	private final CodecWrapper codec = CodecWrappers.getCodec(CodecWrappers.JacksonJson.class);
+
+	// APPNAME:id -> instance
+	private final Map<String, InstanceInfo> instances;
+	private final Queue<Change> recentlyChanged;
+
+	private final AtomicLong registrations;
+	private final AtomicLong heartbeats;
+	private final AtomicLong cancellations;
+	private final AtomicLong statusUpdates;
+	private final AtomicLong errors;
+	// served by this server alone
+	private final AtomicLong requests = new AtomicLong();
+
+	private volatile long latencyMillis;
+	private volatile long latencyJitterMillis;
+	private volatile double errorRate;
+	private volatile RequestListener listener = (operation, appName, id) -> { };
+
+	public FakeEurekaServer() {
+		this.instances = new ConcurrentHashMap<>();
+		this.recentlyChanged = new ConcurrentLinkedQueue<>();
+		this.registrations = new AtomicLong();
+		this.heartbeats = new AtomicLong();
+		this.cancellations = new AtomicLong();
+		this.statusUpdates = new AtomicLong();
+		this.errors = new AtomicLong();
+		server.setDispatcher(this);
+	}
+
+	/**
+	 * A peer of the given server, sharing its registry.
+	 */
+	public FakeEurekaServer(FakeEurekaServer peer) {
+		this.instances = peer.instances;
+		this.recentlyChanged = peer.recentlyChanged;
+		this.registrations = peer.registrations;
+		this.heartbeats = peer.heartbeats;
+		this.cancellations = peer.cancellations;
+		this.statusUpdates = peer.statusUpdates;
+		this.errors = peer.errors;
+		server.setDispatcher(this);
+	}
+
+	public void start() throws IOException {
+		server.start();
+	}
+
+	public void stop() throws IOException {
+		server.shutdown();
+	}
+
+	public String getServiceUrl() {
+		return server.url("/eureka/").toString();
+	}
+
+	/**
+	 * Delay every request by {@code latencyMillis} plus a random share of {@code jitterMillis}.
+	 */
+	public void setLatency(long latencyMillis, long jitterMillis) {
+		this.latencyMillis = latencyMillis;
+		this.latencyJitterMillis = jitterMillis;
+	}
+
+	/**
+	 * Answer this share of the requests, between 0 and 1, with a 500.
+	 */
+	public void setErrorRate(double errorRate) {
+		this.errorRate = errorRate;
+	}
+
+	public void setListener(RequestListener listener) {
+		this.listener = listener;
+	}
+
+	public int size() {
+		return instances.size();
+	}
+
+	public long getRegistrations() {
+		return registrations.get();
+	}
+
+	public long getHeartbeats() {
+		return heartbeats.get();
+	}
+
+	public long getCancellations() {
+		return cancellations.get();
+	}
+
+	public long getStatusUpdates() {
+		return statusUpdates.get();
+	}
+
+	public long getErrors() {
+		return errors.get();
+	}
+
+	public long getRequests() {
+		return requests.get();
+	}
+
+	@Override
+	public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+		requests.incrementAndGet();
+		delay();
+		if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+			errors.incrementAndGet();
+			return status(500);
+		}
+		HttpUrl url = request.getRequestUrl();
+		String path = url.encodedPath();
+		if (!path.startsWith("/eureka/apps")) {
+			return status(404);
+		}
+		path = path.substring("/eureka/apps".length());
+		String[] segments = path.isEmpty() || path.equals("/") ? new String[0] : path.substring(1).split("/");
+		String method = request.getMethod();
+		try {
+			if (segments.length == 0 && "GET".equals(method)) {
+				return respond(applications());
+			} else if (segments.length == 1 && "delta".equals(segments[0]) && "GET".equals(method)) {
+				return respond(delta());
+			} else if (segments.length == 1 && "POST".equals(method)) {
+				return register(request);
+			} else if (segments.length == 2 && "PUT".equals(method)) {
+				return renew(segments[0], segments[1]);
+			} else if (segments.length == 2 && "DELETE".equals(method)) {
+				return cancel(segments[0], segments[1]);
+			} else if (segments.length == 3 && "status".equals(segments[2])) {
+				return statusUpdate(method, segments[0], segments[1], url.queryParameter("value"));
+			}
+			return status(404);
+		} catch (IOException e) {
+			errors.incrementAndGet();
+			return status(500);
+		}
+	}
+
+	private void delay() throws InterruptedException {
+		long millis = latencyMillis;
+		if (latencyJitterMillis > 0) {
+			millis += ThreadLocalRandom.current().nextLong(latencyJitterMillis + 1);
+		}
+		if (millis > 0) {
+			Thread.sleep(millis);
+		}
+	}
+
+	private MockResponse register(RecordedRequest request) throws IOException {
+		InstanceInfo info = codec.decode(request.getBody().readUtf8(), InstanceInfo.class);
+		instances.put(key(info.getAppName(), info.getId()), info);
+		changed(info, InstanceInfo.ActionType.ADDED);
+		registrations.incrementAndGet();
+		listener.onRequest("register", info.getAppName(), info.getId());
+		return status(204);
+	}
+
+	private MockResponse renew(String appName, String id) {
+		if (!instances.containsKey(key(appName, id))) {
+			return status(404);
+		}
+		heartbeats.incrementAndGet();
+		listener.onRequest("renew", appName, id);
+		return status(200);
+	}
+
+	private MockResponse cancel(String appName, String id) {
+		InstanceInfo removed = instances.remove(key(appName, id));
+		if (removed == null) {
+			return status(404);
+		}
+		changed(removed, InstanceInfo.ActionType.DELETED);
+		cancellations.incrementAndGet();
+		listener.onRequest("cancel", appName, id);
+		return status(200);
+	}
+
+	private MockResponse statusUpdate(String method, String appName, String id, String value) {
+		InstanceInfo info = instances.get(key(appName, id));
+		if (info == null) {
+			return status(404);
+		}
+		if ("PUT".equals(method) && value != null) {
+			info.setStatusWithoutDirty(InstanceInfo.InstanceStatus.toEnum(value));
+		} else {
+			info.setStatusWithoutDirty(InstanceInfo.InstanceStatus.UP);
+		}
+		changed(info, InstanceInfo.ActionType.MODIFIED);
+		statusUpdates.incrementAndGet();
+		listener.onRequest("status", appName, id);
+		return status(200);
+	}
+
+	private Applications applications() {
+		Applications applications = new Applications();
+		instances.values().forEach(info -> add(applications, info));
+		applications.setAppsHashCode(applications.getReconcileHashCode());
+		return applications;
+	}
+
+	private Applications delta() {
+		prune();
+		Applications delta = new Applications();
+		for (Change change : recentlyChanged) {
+			InstanceInfo copy = new InstanceInfo(change.instance);
+			copy.setActionType(change.action);
+			add(delta, copy);
+		}
+		delta.setAppsHashCode(applications().getReconcileHashCode());
+		return delta;
+	}
+
+	private void changed(InstanceInfo info, InstanceInfo.ActionType action) {
+		recentlyChanged.add(new Change(info, action));
+		prune();
+	}
+
+	private void prune() {
+		long oldest = System.currentTimeMillis() - DELTA_RETENTION_MILLIS;
+		Iterator<Change> iterator = recentlyChanged.iterator();
+		while (iterator.hasNext() && iterator.next().timestamp < oldest) {
+			iterator.remove();
+		}
+	}
+
+	private static void add(Applications applications, InstanceInfo info) {
+		Application application = applications.getRegisteredApplications(info.getAppName());
+		if (application == null) {
+			application = new Application(info.getAppName());
+			applications.addApplication(application);
+		}
+		application.addInstance(info);
+	}
+
+	private static String key(String appName, String id) {
+		return appName.toUpperCase(Locale.ROOT) + ":" + id;
+	}
+
+	private static MockResponse status(int status) {
+		return new MockResponse().setResponseCode(status);
+	}
+
+	private MockResponse respond(Applications applications) throws IOException {
+		return new MockResponse()
+				.setResponseCode(200)
+				.setHeader("Content-Type", "application/json")
+				.setBody(codec.encode(applications));
+	}
+
+	private static class Change {
+
+		private final InstanceInfo instance;
+		private final InstanceInfo.ActionType action;
+		private final long timestamp = System.currentTimeMillis();
+
+		Change(InstanceInfo instance, InstanceInfo.ActionType action) {
+			this.instance = instance;
+			this.action = action;
+		}
+	}
+}
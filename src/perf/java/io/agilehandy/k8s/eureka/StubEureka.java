@@ -0,0 +1,83 @@
+package io.agilehandy.k8s.eureka;
+
+import java.util.Collections;
+import java.util.List;
+
+import com.netflix.appinfo.InstanceInfo;
+import com.netflix.discovery.shared.resolver.ClosableResolver;
+import com.netflix.discovery.shared.resolver.EurekaEndpoint;
+import com.netflix.discovery.shared.transport.EurekaHttpClient;
+import com.netflix.discovery.shared.transport.EurekaHttpClientFactory;
+import com.netflix.discovery.shared.transport.TransportClientFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import org.springframework.cloud.commons.util.InetUtils;
+import org.springframework.cloud.commons.util.InetUtilsProperties;
+import org.springframework.cloud.netflix.eureka.EurekaClientConfigBean;
+
+/**
+ * Eureka lite whose transport is a {@link StubEurekaHttpClient}.
+ *
+ * @author Haytham Mohamed
+ */
+public class StubEureka extends Eureka {
+
+	// assigned from createTransport(), which runs inside the super constructor
+	private StubEurekaHttpClient stub;
+
+	public StubEureka(EurekaLiteProperties properties, MeterRegistry meterRegistry) {
+		super(new InetUtils(new InetUtilsProperties()), null, new EurekaClientConfigBean()
+				, properties, meterRegistry);
+	}
+
+	@Override
+	public EurekaTransport createTransport() {
+		StubEurekaHttpClient client = new StubEurekaHttpClient();
+		this.stub = client;
+		EurekaHttpClientFactory httpClientFactory = new EurekaHttpClientFactory() {
+			@Override
+			public EurekaHttpClient newClient() {
+				return client;
+			}
+
+			@Override
+			public void shutdown() {
+			}
+		};
+		TransportClientFactory transportClientFactory = new TransportClientFactory() {
+			@Override
+			public EurekaHttpClient newClient(EurekaEndpoint serviceUrl) {
+				return client;
+			}
+
+			@Override
+			public void shutdown() {
+			}
+		};
+		ClosableResolver<EurekaEndpoint> resolver = new ClosableResolver<EurekaEndpoint>() {
+			@Override
+			public String getRegion() {
+				return "default";
+			}
+
+			@Override
+			public List<EurekaEndpoint> getClusterEndpoints() {
+				return Collections.emptyList();
+			}
+
+			@Override
+			public void shutdown() {
+			}
+		};
+		return new EurekaTransport(httpClientFactory, client, transportClientFactory, resolver);
+	}
+
+	public StubEurekaHttpClient getStub() {
+		return stub;
+	}
+
+	// bypasses the instance info cache
+	public InstanceInfo buildInstanceInfo(Application application) {
+		return createInstanceInfo(application);
+	}
+}
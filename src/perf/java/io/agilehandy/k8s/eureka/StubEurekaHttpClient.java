@@ -0,0 +1,101 @@
+package io.agilehandy.k8s.eureka;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.netflix.appinfo.InstanceInfo;
+import com.netflix.discovery.shared.Applications;
+import com.netflix.discovery.shared.transport.EurekaHttpClient;
+import com.netflix.discovery.shared.transport.EurekaHttpResponse;
+
+/**
+ * Eureka client that acknowledges every request without any I/O, counting them.
+ *
+ * @author Haytham Mohamed
+ */
+public class StubEurekaHttpClient implements EurekaHttpClient {
+
+	private final AtomicLong registrations = new AtomicLong();
+	private final AtomicLong heartbeats = new AtomicLong();
+	private final AtomicLong cancellations = new AtomicLong();
+
+	@Override
+	public EurekaHttpResponse<Void> register(InstanceInfo info) {
+		registrations.incrementAndGet();
+		return EurekaHttpResponse.status(204);
+	}
+
+	@Override
+	public EurekaHttpResponse<Void> cancel(String appName, String id) {
+		cancellations.incrementAndGet();
+		return EurekaHttpResponse.status(200);
+	}
+
+	@Override
+	public EurekaHttpResponse<InstanceInfo> sendHeartBeat(String appName, String id, InstanceInfo info
+			, InstanceInfo.InstanceStatus overriddenStatus) {
+		heartbeats.incrementAndGet();
+		return EurekaHttpResponse.anEurekaHttpResponse(200, InstanceInfo.class).build();
+	}
+
+	@Override
+	public EurekaHttpResponse<Void> statusUpdate(String appName, String id, InstanceInfo.InstanceStatus newStatus
+			, InstanceInfo info) {
+		return EurekaHttpResponse.status(200);
+	}
+
+	@Override
+	public EurekaHttpResponse<Void> deleteStatusOverride(String appName, String id, InstanceInfo info) {
+		return EurekaHttpResponse.status(200);
+	}
+
+	@Override
+	public EurekaHttpResponse<Applications> getApplications(String... regions) {
+		return EurekaHttpResponse.anEurekaHttpResponse(200, new Applications()).build();
+	}
+
+	@Override
+	public EurekaHttpResponse<Applications> getDelta(String... regions) {
+		return EurekaHttpResponse.anEurekaHttpResponse(200, new Applications()).build();
+	}
+
+	@Override
+	public EurekaHttpResponse<Applications> getVip(String vipAddress, String... regions) {
+		return EurekaHttpResponse.anEurekaHttpResponse(200, new Applications()).build();
+	}
+
+	@Override
+	public EurekaHttpResponse<Applications> getSecureVip(String secureVipAddress, String... regions) {
+		return EurekaHttpResponse.anEurekaHttpResponse(200, new Applications()).build();
+	}
+
+	@Override
+	public EurekaHttpResponse<com.netflix.discovery.shared.Application> getApplication(String appName) {
+		return EurekaHttpResponse.anEurekaHttpResponse(404, com.netflix.discovery.shared.Application.class).build();
+	}
+
+	@Override
+	public EurekaHttpResponse<InstanceInfo> getInstance(String appName, String id) {
+		return EurekaHttpResponse.anEurekaHttpResponse(404, InstanceInfo.class).build();
+	}
+
+	@Override
+	public EurekaHttpResponse<InstanceInfo> getInstance(String id) {
+		return EurekaHttpResponse.anEurekaHttpResponse(404, InstanceInfo.class).build();
+	}
+
+	@Override
+	public void shutdown() {
+	}
+
+	public long getRegistrations() {
+		return registrations.get();
+	}
+
+	public long getHeartbeats() {
+		return heartbeats.get();
+	}
+
+	public long getCancellations() {
+		return cancellations.get();
+	}
+}
@@ -0,0 +1,245 @@
+package io.agilehandy.k8s.scale;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import io.fabric8.kubernetes.api.model.Endpoints;
+import io.fabric8.kubernetes.api.model.EndpointsListBuilder;
+import io.fabric8.kubernetes.api.model.HasMetadata;
+import io.fabric8.kubernetes.api.model.StatusBuilder;
+import io.fabric8.kubernetes.api.model.WatchEvent;
+import io.fabric8.kubernetes.api.model.coordination.v1.Lease;
+import io.fabric8.kubernetes.api.model.coordination.v1.LeaseListBuilder;
+import io.fabric8.kubernetes.api.model.discovery.EndpointSlice;
+import io.fabric8.kubernetes.api.model.discovery.EndpointSliceListBuilder;
+import io.fabric8.kubernetes.client.utils.Serialization;
+import okhttp3.HttpUrl;
+import okhttp3.Response;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.RecordedRequest;
+
+/**
+ * Serves list and watch of the Endpoints and EndpointSlices of any namespace
+ * from memory, for a fabric8 mock server. Changes made through {@link #add}, {@link #update} and
+ * {@link #delete} are streamed to the open watches, honouring their label
+ * selector the way the API server does. Leases are kept as well, for the
+ * membership of sharded controllers and for leader election, and like the API
+ * server refuse an update made against an outdated resource version.
+ *
+ * @author Haytham Mohamed
+ */
+public class EndpointsApiDispatcher extends Dispatcher {
+
+	private static final Pattern PATH = Pattern.compile(
+			"/(?:api/v1|apis/discovery.k8s.io/v1beta1)/namespaces/([^/]+)/(endpoints|endpointslices)");
+	private static final Pattern LEASES = Pattern.compile(
+			"/apis/coordination.k8s.io/v1/namespaces/([^/]+)/leases(?:/([^/]+))?");
+
+	// plural/namespace/name -> endpoints or endpoint slice
+	private final Map<String, HasMetadata> endpoints = new ConcurrentHashMap<>();
+	// namespace/name -> lease
+	private final Map<String, Lease> leases = new ConcurrentHashMap<>();
+	private final List<Watch> watches = new CopyOnWriteArrayList<>();
+	private final AtomicLong resourceVersion = new AtomicLong();
+	private final AtomicLong streamed = new AtomicLong();
+	private final AtomicLong streamedBytes = new AtomicLong();
+
+	@Override
+	public MockResponse dispatch(RecordedRequest request) {
+		HttpUrl url = request.getRequestUrl();
+		Matcher lease = LEASES.matcher(url.encodedPath());
+		if (lease.matches()) {
+			return lease(request, lease.group(1), lease.group(2));
+		}
+		Matcher path = PATH.matcher(url.encodedPath());
+		if (!"GET".equals(request.getMethod()) || !path.matches()) {
+			return new MockResponse().setResponseCode(404);
+		}
+		String namespace = path.group(1);
+		String plural = path.group(2);
+		Map<String, String> selector = selector(url.queryParameter("labelSelector"));
+		if ("true".equals(url.queryParameter("watch"))) {
+			return new MockResponse().withWebSocketUpgrade(new Watch(plural, namespace, selector));
+		}
+		synchronized (this) {
+			String version = String.valueOf(resourceVersion.get());
+			Object list = "endpoints".equals(plural)
+					? new EndpointsListBuilder().withNewMetadata().withResourceVersion(version).endMetadata()
+							.withItems(items(Endpoints.class, namespace, selector)).build()
+					: new EndpointSliceListBuilder().withNewMetadata().withResourceVersion(version).endMetadata()
+							.withItems(items(EndpointSlice.class, namespace, selector)).build();
+			return new MockResponse().setResponseCode(200).setBody(Serialization.asJson(list));
+		}
+	}
+
+	private synchronized MockResponse lease(RecordedRequest request, String namespace, String name) {
+		String key = namespace + "/" + name;
+		switch (request.getMethod()) {
+			case "GET":
+				if (name == null) {
+					Map<String, String> selector = selector(request.getRequestUrl().queryParameter("labelSelector"));
+					List<Lease> items = new ArrayList<>();
+					leases.values().stream()
+							.filter(l -> namespace.equals(l.getMetadata().getNamespace()))
+							.filter(l -> labelsMatch(l.getMetadata().getLabels(), selector))
+							.forEach(items::add);
+					return json(new LeaseListBuilder().withNewMetadata().endMetadata().withItems(items).build());
+				}
+				return leases.containsKey(key) ? json(leases.get(key)) : new MockResponse().setResponseCode(404);
+			case "POST":
+			case "PUT":
+				Lease body = Serialization.unmarshal(request.getBody().readUtf8(), Lease.class);
+				String leaseKey = namespace + "/" + body.getMetadata().getName();
+				Lease current = leases.get(leaseKey);
+				// optimistic locking, as leader election relies on it
+				if ("POST".equals(request.getMethod()) ? current != null
+						: current == null || body.getMetadata().getResourceVersion() != null
+						&& !body.getMetadata().getResourceVersion().equals(current.getMetadata().getResourceVersion())) {
+					return new MockResponse().setResponseCode(409).setBody(Serialization.asJson(new StatusBuilder()
+							.withCode(409).withReason("Conflict").withMessage("lease " + leaseKey + " was modified")
+							.build()));
+				}
+				body.getMetadata().setNamespace(namespace);
+				body.getMetadata().setResourceVersion(String.valueOf(resourceVersion.incrementAndGet()));
+				leases.put(leaseKey, body);
+				return json(body);
+			case "DELETE":
+				return leases.remove(key) != null
+						? new MockResponse().setResponseCode(200).setBody("{}")
+						: new MockResponse().setResponseCode(404);
+			default:
+				return new MockResponse().setResponseCode(405);
+		}
+	}
+
+	private static MockResponse json(Object body) {
+		return new MockResponse().setResponseCode(200).setBody(Serialization.asJson(body));
+	}
+
+	public void add(HasMetadata ep) {
+		publish("ADDED", ep);
+	}
+
+	public void update(HasMetadata ep) {
+		publish("MODIFIED", ep);
+	}
+
+	public void delete(HasMetadata ep) {
+		publish("DELETED", ep);
+	}
+
+	public int getWatchCount() {
+		return watches.size();
+	}
+
+	/**
+	 * Events sent to the watches, after label selection.
+	 */
+	public long getStreamed() {
+		return streamed.get();
+	}
+
+	private synchronized void publish(String type, HasMetadata ep) {
+		ep.getMetadata().setResourceVersion(String.valueOf(resourceVersion.incrementAndGet()));
+		String key = plural(ep) + "/" + ep.getMetadata().getNamespace() + "/" + ep.getMetadata().getName();
+		if ("DELETED".equals(type)) {
+			endpoints.remove(key);
+		} else {
+			endpoints.put(key, ep);
+		}
+		String event = Serialization.asJson(new WatchEvent(ep, type));
+		for (Watch watch : watches) {
+			if (watch.socket != null && matches(ep, watch.plural, watch.namespace, watch.selector)) {
+				watch.socket.send(event);
+				streamed.incrementAndGet();
+				streamedBytes.addAndGet(event.length());
+			}
+		}
+	}
+
+	public long getStreamedBytes() {
+		return streamedBytes.get();
+	}
+
+	private <T extends HasMetadata> List<T> items(Class<T> type, String namespace, Map<String, String> selector) {
+		List<T> items = new ArrayList<>();
+		endpoints.values().stream()
+				.filter(type::isInstance)
+				.filter(ep -> matches(ep, plural(ep), namespace, selector))
+				.map(type::cast)
+				.forEach(items::add);
+		return items;
+	}
+
+	private static String plural(HasMetadata ep) {
+		return ep instanceof EndpointSlice ? "endpointslices" : "endpoints";
+	}
+
+	private static boolean matches(HasMetadata ep, String plural, String namespace, Map<String, String> selector) {
+		if (!plural.equals(plural(ep)) || !namespace.equals(ep.getMetadata().getNamespace())) {
+			return false;
+		}
+		return labelsMatch(ep.getMetadata().getLabels(), selector);
+	}
+
+	private static boolean labelsMatch(Map<String, String> objectLabels, Map<String, String> selector) {
+		Map<String, String> labels = objectLabels == null ? Collections.emptyMap() : objectLabels;
+		return selector.entrySet().stream().allMatch(e -> e.getValue() == null
+				? labels.containsKey(e.getKey()) : e.getValue().equals(labels.get(e.getKey())));
+	}
+
+	// only equality and exists requirements, which is all the controller sends;
+	// a label that only has to exist maps to null
+	private static Map<String, String> selector(String labelSelector) {
+		Map<String, String> selector = new HashMap<>();
+		if (labelSelector != null && !labelSelector.isEmpty()) {
+			for (String requirement : labelSelector.split(",")) {
+				String[] pair = requirement.split("=", 2);
+				selector.put(pair[0], pair.length > 1 ? pair[1] : null);
+			}
+		}
+		return selector;
+	}
+
+	private class Watch extends WebSocketListener {
+
+		private final String plural;
+		private final String namespace;
+		private final Map<String, String> selector;
+		private volatile WebSocket socket;
+
+		Watch(String plural, String namespace, Map<String, String> selector) {
+			this.plural = plural;
+			this.namespace = namespace;
+			this.selector = selector;
+		}
+
+		@Override
+		public void onOpen(WebSocket webSocket, Response response) {
+			this.socket = webSocket;
+			watches.add(this);
+		}
+
+		@Override
+		public void onClosing(WebSocket webSocket, int code, String reason) {
+			watches.remove(this);
+			webSocket.close(code, reason);
+		}
+
+		@Override
+		public void onFailure(WebSocket webSocket, Throwable t, Response response) {
+			watches.remove(this);
+		}
+	}
+}
@@ -0,0 +1,560 @@
+package io.agilehandy.k8s.scale;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import io.agilehandy.k8s.MainApplication;
+import io.agilehandy.k8s.benchmark.SyntheticEndpoints;
+import io.agilehandy.k8s.endpoints.EndpointsInformer;
+import io.agilehandy.k8s.eureka.FakeEurekaServer;
+import io.agilehandy.k8s.lease.LeaseRenewalScheduler;
+import io.agilehandy.k8s.leader.LeaderElection;
+import io.agilehandy.k8s.sharding.ShardMembership;
+import io.fabric8.kubernetes.api.model.HasMetadata;
+import io.fabric8.kubernetes.client.Config;
+import io.fabric8.kubernetes.client.server.mock.KubernetesMockServer;
+import io.fabric8.mockwebserver.Context;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import okhttp3.mockwebserver.MockWebServer;
+
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * Runs the whole controller against a fabric8 mock API server and a
+ * {@link FakeEurekaServer}, replays synthetic Endpoints add, update and delete
+ * events and reports the event-to-registration latency percentiles and the
+ * heartbeat rate Eureka sees.
+ *
+ * <pre>
+ * mvn -Pperf test-compile exec:exec -Dperf.main=io.agilehandy.k8s.scale.ScaleTest \
+ *     -Dperf.args="--services=500 --addresses=10 --eureka-latency-ms=20 --eureka-error-rate=0.01"
+ * </pre>
+ *
+ * Options, all {@code --name=value}:
+ * <ul>
+ * <li>services (200), addresses per service (10)</li>
+ * <li>endpoint-slices: publish every service as EndpointSlices of slice-size (100)
+ * addresses and watch those instead of Endpoints (false)</li>
+ * <li>namespaces: the services are spread over, each watched by its own informer (1)</li>
+ * <li>replicas: controllers sharing the services through sharding (1)</li>
+ * <li>leader-election: the replicas elect a leader instead, the others stand by (false)</li>
+ * <li>leave: stop the last replica, or the leader, after the hold and measure the
+ * heartbeats again (false)</li>
+ * <li>restart: restart a single controller after the hold, deleting a tenth of
+ * the services while it is down, and measure how it resumes (false)</li>
+ * <li>snapshot: keep the registration state across the restart (true)</li>
+ * <li>churn: rounds that replace one address of every service (3)</li>
+ * <li>readiness: rounds that take one address of every service out of
+ * readiness and back (0)</li>
+ * <li>rate: events per second, 0 for as fast as possible (0)</li>
+ * <li>renewal-interval: lease renewal interval in seconds (10)</li>
+ * <li>hold: seconds to measure heartbeats over (30)</li>
+ * <li>eureka-latency-ms (5), eureka-jitter-ms (5), eureka-error-rate (0)</li>
+ * <li>eureka-peers: replicating eureka servers in the defaultZone (1)</li>
+ * <li>outage: seconds every eureka peer answers with errors after the hold,
+ * then measure the heartbeats again (0)</li>
+ * <li>peer-down: stop the last eureka peer after the hold and measure the
+ * heartbeats again (false)</li>
+ * <li>timeout: seconds to wait for each phase to be applied (120)</li>
+ * </ul>
+ * The arguments are passed on to the application as well, so any of its
+ * properties can be set, e.g. {@code --logging.level.io.agilehandy.k8s=DEBUG}.
+ *
+ * @author Haytham Mohamed
+ */
+public final class ScaleTest {
+
+	private static final String NAMESPACE = "default";
+
+	private final String[] namespaces;
+	private final String[] args;
+	private final Map<String, String> options;
+	private final boolean leaderElection;
+	// replaced at the start of every phase
+	private volatile Latencies registrations = new Latencies();
+	private volatile Latencies cancellations = new Latencies();
+	private volatile Latencies statusUpdates = new Latencies();
+
+	private FakeEurekaServer eureka;
+	private final List<FakeEurekaServer> peers = new ArrayList<>();
+	private EndpointsApiDispatcher api;
+	private KubernetesMockServer kubernetes;
+	private final List<ConfigurableApplicationContext> contexts = new ArrayList<>();
+	// the arguments of the first replica, to restart it with
+	private List<String> firstArguments;
+	// services deleted while the controller was down
+	private int deleted;
+	// the first replica, whose metrics are reported
+	private ConfigurableApplicationContext context;
+
+	private ScaleTest(String[] args, Map<String, String> options) {
+		this.args = args;
+		this.options = options;
+		this.leaderElection = options.containsKey("leader-election");
+		int count = option("namespaces", 1);
+		this.namespaces = new String[count];
+		for (int i = 0; i < count; i++) {
+			namespaces[i] = count == 1 ? NAMESPACE : "ns-" + i;
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		Map<String, String> options = new HashMap<>();
+		for (String arg : args) {
+			String[] pair = arg.replaceFirst("^--", "").split("=", 2);
+			options.put(pair[0], pair.length > 1 ? pair[1] : "true");
+		}
+		ScaleTest test = new ScaleTest(args, options);
+		try {
+			test.start();
+			test.run();
+		} finally {
+			test.stop();
+		}
+		System.exit(0);
+	}
+
+	private int option(String name, int defaultValue) {
+		return options.containsKey(name) ? Integer.parseInt(options.get(name)) : defaultValue;
+	}
+
+	private double option(String name, double defaultValue) {
+		return options.containsKey(name) ? Double.parseDouble(options.get(name)) : defaultValue;
+	}
+
+	private void start() throws Exception {
+		eureka = new FakeEurekaServer();
+		for (int i = 0; i < option("eureka-peers", 1); i++) {
+			FakeEurekaServer peer = i == 0 ? eureka : new FakeEurekaServer(eureka);
+			peer.setLatency(option("eureka-latency-ms", 5), option("eureka-jitter-ms", 5));
+			peer.setErrorRate(option("eureka-error-rate", 0.0));
+			peer.setListener((operation, appName, id) -> {
+				if ("register".equals(operation)) {
+					registrations.complete(key(appName, id));
+				} else if ("cancel".equals(operation)) {
+					cancellations.complete(key(appName, id));
+				} else if ("status".equals(operation)) {
+					statusUpdates.complete(key(appName, id));
+				}
+			});
+			peer.start();
+			peers.add(peer);
+		}
+
+		api = new EndpointsApiDispatcher();
+		kubernetes = new KubernetesMockServer(new Context(), new MockWebServer(), new HashMap<>(), api, false);
+		kubernetes.init();
+
+		System.setProperty(Config.KUBERNETES_MASTER_SYSTEM_PROPERTY, kubernetes.url("/"));
+		System.setProperty(Config.KUBERNETES_NAMESPACE_SYSTEM_PROPERTY, NAMESPACE);
+		System.setProperty(Config.KUBERNETES_AUTH_TRYKUBECONFIG_SYSTEM_PROPERTY, "false");
+		System.setProperty(Config.KUBERNETES_AUTH_TRYSERVICEACCOUNT_SYSTEM_PROPERTY, "false");
+
+		// as command line arguments, which take precedence over application.yaml
+		List<String> arguments = new ArrayList<>(Arrays.asList(
+				"--spring.main.banner-mode=off",
+				"--eureka.client.serviceUrl.defaultZone=" + peers.stream()
+						.map(FakeEurekaServer::getServiceUrl).collect(Collectors.joining(",")),
+				"--eureka.instance.lease-renewal-interval-in-seconds=" + option("renewal-interval", 10),
+				"--eureka.k8s.proxy.namespaces=" + String.join(",", namespaces),
+				"--eureka.k8s.proxy.metrics-port=0",
+				"--eureka.k8s.proxy.endpoint-slices=" + options.containsKey("endpoint-slices")));
+		arguments.addAll(Arrays.asList(args));
+		if (options.containsKey("restart") && !"false".equals(options.get("snapshot"))) {
+			Path snapshot = Files.createTempDirectory("scale-test").resolve("registrations");
+			snapshot.toFile().deleteOnExit();
+			arguments.add("--eureka.lite.snapshot-path=" + snapshot);
+			arguments.add("--eureka.lite.snapshot-interval-seconds=1");
+		}
+		int replicas = option("replicas", 1);
+		if (replicas > 1 && leaderElection) {
+			arguments.add("--eureka.k8s.leader-election.enabled=true");
+		} else if (replicas > 1) {
+			arguments.add("--eureka.k8s.sharding.enabled=true");
+			arguments.add("--eureka.k8s.sharding.renew-interval-seconds=1");
+		}
+		for (int i = 0; i < replicas; i++) {
+			List<String> replicaArguments = new ArrayList<>(arguments);
+			replicaArguments.add("--eureka.k8s.sharding.identity=replica-" + i);
+			replicaArguments.add("--eureka.k8s.leader-election.identity=replica-" + i);
+			if (i == 0) {
+				firstArguments = replicaArguments;
+			}
+			contexts.add(new SpringApplicationBuilder(MainApplication.class)
+					.run(replicaArguments.toArray(new String[0])));
+		}
+		context = contexts.get(0);
+
+		if (!await(() -> contexts.stream().allMatch(c -> c.getBean(EndpointsInformer.class).isReady()
+						&& (leaderElection || c.getBean(ShardMembership.class).getMembers().size() == replicas))
+				&& (!leaderElection || leaders().size() == 1)
+				&& api.getWatchCount() >= namespaces.length * replicas, TimeUnit.SECONDS.toMillis(30))) {
+			throw new IllegalStateException("The endpoints informers did not start watching");
+		}
+	}
+
+	private void stop() throws IOException {
+		contexts.forEach(ConfigurableApplicationContext::close);
+		if (kubernetes != null) {
+			kubernetes.destroy();
+		}
+		for (FakeEurekaServer peer : peers) {
+			peer.stop();
+		}
+	}
+
+	private void run() throws InterruptedException, IOException {
+		int services = option("services", 200);
+		int addresses = option("addresses", 10);
+		int churn = option("churn", 3);
+		long timeoutMillis = TimeUnit.SECONDS.toMillis(option("timeout", 120));
+		Pacer pacer = new Pacer(option("rate", 0));
+
+		long start = System.currentTimeMillis();
+		for (int s = 0; s < services; s++) {
+			for (int i = 0; i < addresses; i++) {
+				registrations.expect(key(name(s), i));
+			}
+			pacer.pace();
+			publish(s, addresses, 0, 0, -1, api::add);
+		}
+		boolean added = registrations.await(timeoutMillis);
+		report("add", services, start, added);
+
+		nextPhase();
+		start = System.currentTimeMillis();
+		for (int round = 1; round <= churn; round++) {
+			for (int s = 0; s < services; s++) {
+				cancellations.expect(key(name(s), round - 1));
+				registrations.expect(key(name(s), round - 1 + addresses));
+				pacer.pace();
+				// with slices, only the one of the replaced pod changes
+				publish(s, addresses, round, 0, (round - 1) % addresses, api::update);
+			}
+		}
+		boolean updated = registrations.await(timeoutMillis) & cancellations.await(timeoutMillis);
+		report("update", services * churn, start, updated);
+
+		hold("heartbeats");
+		if (contexts.size() > 1 && options.containsKey("leave") && leaderElection) {
+			ConfigurableApplicationContext leader = leaders().get(0);
+			contexts.remove(leader);
+			context = contexts.get(0);
+			long left = System.currentTimeMillis();
+			leader.close();
+			// a standby acquires the released lease and tracks every instance
+			boolean tookOver = await(() -> leaders().size() == 1 && leaders().get(0)
+					.getBean(LeaseRenewalScheduler.class).size() == eureka.size(), TimeUnit.SECONDS.toMillis(60));
+			System.out.printf("failover: %s in %d ms%n", tookOver ? "took over" : "NOT taken over"
+					, System.currentTimeMillis() - left);
+			hold("heartbeats after the leader left");
+		} else if (contexts.size() > 1 && options.containsKey("leave")) {
+			contexts.remove(contexts.size() - 1).close();
+			// the others notice within a membership renewal and take over
+			Thread.sleep(TimeUnit.SECONDS.toMillis(3));
+			hold("heartbeats after a replica left");
+		} else if (peers.size() > 1 && options.containsKey("peer-down")) {
+			System.out.printf("peer down: %s%n", peerRequests());
+			peers.remove(peers.size() - 1).stop();
+			// the peer's instances fail over, and move once it is quarantined
+			Thread.sleep(TimeUnit.SECONDS.toMillis(3));
+			hold("heartbeats after a peer went down");
+		} else if (contexts.size() == 1 && options.containsKey("restart")) {
+			restart(services, addresses, churn, timeoutMillis);
+			hold("heartbeats after the restart");
+		}
+
+		int outage = option("outage", 0);
+		if (outage > 0) {
+			long requests = peerRequestCount();
+			peers.forEach(peer -> peer.setErrorRate(1.0));
+			Thread.sleep(TimeUnit.SECONDS.toMillis(outage));
+			System.out.printf("outage: %d requests reached eureka in %d s%n", peerRequestCount() - requests, outage);
+			peers.forEach(peer -> peer.setErrorRate(option("eureka-error-rate", 0.0)));
+			long recovered = System.currentTimeMillis();
+			long heartbeats = eureka.getHeartbeats();
+			// until there was a heartbeat per instance again
+			await(() -> eureka.getHeartbeats() - heartbeats >= eureka.size(), timeoutMillis);
+			System.out.printf("  a heartbeat per instance within %d ms of eureka recovering%n"
+					, System.currentTimeMillis() - recovered);
+			hold("heartbeats after the outage");
+		}
+
+		int readiness = option("readiness", 0);
+		if (readiness > 0) {
+			nextPhase();
+			start = System.currentTimeMillis();
+			boolean flipped = true;
+			for (int round = 1; round <= readiness; round++) {
+				// the first pod of every service goes out of service and back,
+				// each only a status update
+				for (int notReady = 1; notReady >= 0; notReady--) {
+					for (int s = deleted; s < services; s++) {
+						statusUpdates.expect(key(name(s), churn));
+						pacer.pace();
+						publish(s, addresses, churn, notReady, churn % addresses, api::update);
+					}
+					flipped &= statusUpdates.await(timeoutMillis);
+				}
+			}
+			report("readiness", (services - deleted) * readiness * 2, start, flipped);
+			System.out.println("  event -> status    " + statusUpdates.summary());
+		}
+
+		nextPhase();
+		start = System.currentTimeMillis();
+		for (int s = deleted; s < services; s++) {
+			for (int i = churn; i < churn + addresses; i++) {
+				cancellations.expect(key(name(s), i));
+			}
+			pacer.pace();
+			publish(s, addresses, churn, 0, -1, api::delete);
+		}
+		boolean deleted = cancellations.await(timeoutMillis);
+		report("delete", services - this.deleted, start, deleted);
+
+		System.out.println();
+		Timer lag = context.getBean(MeterRegistry.class).find("eureka.controller.heartbeat.lag").timer();
+		if (lag != null) {
+			System.out.printf(Locale.ROOT, "heartbeat lag      mean=%.1f ms max=%.1f ms%n"
+					, lag.mean(TimeUnit.MILLISECONDS), lag.max(TimeUnit.MILLISECONDS));
+		}
+		System.out.printf("eureka             registrations=%d heartbeats=%d cancellations=%d status updates=%d"
+				+ " errors=%d%n", eureka.getRegistrations(), eureka.getHeartbeats(), eureka.getCancellations()
+				, eureka.getStatusUpdates(), eureka.getErrors());
+		if (peers.size() > 1) {
+			System.out.println("eureka peers       " + peerRequests());
+		}
+		System.out.printf("api server         events streamed=%d bytes streamed=%d%n", api.getStreamed()
+				, api.getStreamedBytes());
+		double reconciled = 0;
+		long reconciles = 0;
+		for (ConfigurableApplicationContext c : contexts) {
+			for (Timer timer : c.getBean(MeterRegistry.class).find("eureka.controller.reconcile").timers()) {
+				reconciled += timer.totalTime(TimeUnit.MILLISECONDS);
+				reconciles += timer.count();
+			}
+		}
+		System.out.printf(Locale.ROOT, "reconcile          count=%d mean=%.2f ms%n", reconciles
+				, reconciles == 0 ? 0 : reconciled / reconciles);
+		System.out.printf("jvm                platform threads peak=%d%n"
+				, ManagementFactory.getThreadMXBean().getPeakThreadCount());
+
+	}
+
+	private void hold(String phase) throws InterruptedException {
+		int hold = option("hold", 30);
+		long heartbeats = eureka.getHeartbeats();
+		Thread.sleep(TimeUnit.SECONDS.toMillis(hold));
+		double perSecond = (eureka.getHeartbeats() - heartbeats) / (double) hold;
+		System.out.printf(Locale.ROOT, "%s: %.1f/s over %d s for %d instances (expected %.1f/s)%n"
+				, phase, perSecond, hold, eureka.size()
+				, eureka.size() / (double) option("renewal-interval", 10));
+		if (contexts.size() > 1) {
+			System.out.printf("  instances per replica %s%n", contexts.stream()
+					.map(c -> String.valueOf(c.getBean(LeaseRenewalScheduler.class).size()))
+					.collect(Collectors.joining(" ")));
+		}
+	}
+
+	// the endpoints of a service, or all its slices, or only the one holding the slot
+	private void publish(int service, int addresses, int generation, int notReady, int slot
+			, Consumer<HasMetadata> action) {
+		if (!options.containsKey("endpoint-slices")) {
+			action.accept(SyntheticEndpoints.endpoints(namespace(service), name(service), addresses, 0, generation
+					, notReady));
+			return;
+		}
+		int sliceSize = option("slice-size", 100);
+		for (int index = 0; index < SyntheticEndpoints.slices(addresses, sliceSize); index++) {
+			if (slot < 0 || slot / sliceSize == index) {
+				action.accept(SyntheticEndpoints.slice(namespace(service), name(service), addresses, sliceSize
+						, index, generation, notReady));
+			}
+		}
+	}
+
+	// stop the controller, delete some services meanwhile and start it again
+	private void restart(int services, int addresses, int churn, long timeoutMillis) throws InterruptedException {
+		nextPhase();
+		context.close();
+		contexts.clear();
+		deleted = Math.max(1, services / 10);
+		for (int s = 0; s < deleted; s++) {
+			for (int i = churn; i < churn + addresses; i++) {
+				cancellations.expect(key(name(s), i));
+			}
+			publish(s, addresses, churn, 0, -1, api::delete);
+		}
+		long heartbeats = eureka.getHeartbeats();
+		long registered = eureka.getRegistrations();
+		long start = System.currentTimeMillis();
+		context = new SpringApplicationBuilder(MainApplication.class).run(firstArguments.toArray(new String[0]));
+		contexts.add(context);
+		long started = System.currentTimeMillis() - start;
+		// restored instances are renewed before the informers even list
+		long resumed = eureka.getHeartbeats() - heartbeats;
+		await(() -> context.getBean(EndpointsInformer.class).isReady(), timeoutMillis);
+		long ready = System.currentTimeMillis() - start;
+		boolean cancelled = cancellations.await(timeoutMillis);
+		System.out.printf("restart: context started in %d ms with %d heartbeats sent, ready in %d ms%n"
+				, started, resumed, ready);
+		System.out.printf("  orphans of %d deleted services %s in %d ms, %d registrations%n", deleted
+				, cancelled ? "cancelled" : "NOT cancelled (" + cancellations.pending() + " left)"
+				, System.currentTimeMillis() - start, eureka.getRegistrations() - registered);
+	}
+
+	private long peerRequestCount() {
+		return peers.stream().mapToLong(FakeEurekaServer::getRequests).sum();
+	}
+
+	private String peerRequests() {
+		return "requests=" + peers.stream().map(peer -> String.valueOf(peer.getRequests()))
+				.collect(Collectors.joining(" "));
+	}
+
+	private List<ConfigurableApplicationContext> leaders() {
+		return contexts.stream()
+				.filter(c -> c.getBean(LeaderElection.class).isLeader())
+				.collect(Collectors.toList());
+	}
+
+	private void nextPhase() {
+		registrations = new Latencies();
+		cancellations = new Latencies();
+		statusUpdates = new Latencies();
+	}
+
+	private void report(String phase, int events, long start, boolean complete) {
+		long elapsed = System.currentTimeMillis() - start;
+		System.out.printf(Locale.ROOT, "%s: %d events applied in %d ms (%.0f events/s)%s%n"
+				, phase, events, elapsed, events * 1000.0 / Math.max(1, elapsed)
+				, complete ? "" : ", TIMED OUT: " + registrations.pending() + " registrations and "
+						+ cancellations.pending() + " cancellations outstanding, e.g. "
+						+ registrations.sample() + " " + cancellations.sample());
+		System.out.println("  event -> register  " + registrations.summary());
+		System.out.println("  event -> cancel    " + cancellations.summary());
+	}
+
+	private String namespace(int service) {
+		return namespaces[service % namespaces.length];
+	}
+
+	private static String name(int service) {
+		return "svc-" + service;
+	}
+
+	// the pod uid of SyntheticEndpoints is the eureka instance id
+	private static String key(String service, int pod) {
+		return key(service, service + "-pod-" + pod);
+	}
+
+	private static String key(String appName, String id) {
+		return appName.toUpperCase(Locale.ROOT) + ":" + id;
+	}
+
+	private static boolean await(Condition condition, long timeoutMillis) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + timeoutMillis;
+		while (!condition.met()) {
+			if (System.currentTimeMillis() > deadline) {
+				return false;
+			}
+			Thread.sleep(10);
+		}
+		return true;
+	}
+
+	private interface Condition {
+		boolean met();
+	}
+
+	/**
+	 * Time from emitting an event to the matching request reaching Eureka.
+	 */
+	private static class Latencies {
+
+		private final Map<String, Long> pending = new ConcurrentHashMap<>();
+		private final List<Long> samples = Collections.synchronizedList(new ArrayList<>());
+
+		void expect(String key) {
+			pending.put(key, System.nanoTime());
+		}
+
+		void complete(String key) {
+			Long start = pending.remove(key);
+			if (start != null) {
+				samples.add(System.nanoTime() - start);
+			}
+		}
+
+		int pending() {
+			return pending.size();
+		}
+
+		List<String> sample() {
+			return pending.keySet().stream().limit(3).collect(Collectors.toList());
+		}
+
+		boolean await(long timeoutMillis) throws InterruptedException {
+			return ScaleTest.await(pending::isEmpty, timeoutMillis);
+		}
+
+		String summary() {
+			List<Long> sorted;
+			synchronized (samples) {
+				sorted = new ArrayList<>(samples);
+			}
+			if (sorted.isEmpty()) {
+				return "no samples";
+			}
+			Collections.sort(sorted);
+			return String.format(Locale.ROOT, "n=%d p50=%.1f ms p90=%.1f ms p99=%.1f ms max=%.1f ms"
+					, sorted.size(), percentile(sorted, 0.5), percentile(sorted, 0.9)
+					, percentile(sorted, 0.99), percentile(sorted, 1.0));
+		}
+
+		private static double percentile(List<Long> sorted, double p) {
+			int index = (int) Math.ceil(p * sorted.size()) - 1;
+			return sorted.get(Math.max(0, index)) / 1_000_000.0;
+		}
+	}
+
+	/**
+	 * Spaces events evenly at a fixed rate, 0 meaning no limit.
+	 */
+	private static class Pacer {
+
+		private final long intervalNanos;
+		private long next = System.nanoTime();
+
+		Pacer(int perSecond) {
+			this.intervalNanos = perSecond > 0 ? TimeUnit.SECONDS.toNanos(1) / perSecond : 0;
+		}
+
+		void pace() throws InterruptedException {
+			if (intervalNanos == 0) {
+				return;
+			}
+			long wait = next - System.nanoTime();
+			if (wait > 0) {
+				TimeUnit.NANOSECONDS.sleep(wait);
+			}
+			next = Math.max(next, System.nanoTime() - intervalNanos) + intervalNanos;
+		}
+	}
+}
@@ -0,0 +1,56 @@
+package io.agilehandy.k8s.common;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class WorkQueueTests {
+
+	private final WorkQueue<String> queue = new WorkQueue<>(100, 1000);
+
+	@AfterEach
+	void shutdown() {
+		queue.shutdown();
+	}
+
+	@Test
+	void duplicateAddsAreQueuedOnce() throws InterruptedException {
+		queue.add("default/a");
+		queue.add("default/b");
+		queue.add("default/a");
+
+		assertThat(queue.size()).isEqualTo(2);
+		assertThat(queue.take()).isEqualTo("default/a");
+		assertThat(queue.take()).isEqualTo("default/b");
+	}
+
+	@Test
+	void keyAddedWhileProcessingIsQueuedWhenDone() throws InterruptedException {
+		queue.add("default/a");
+		String key = queue.take();
+		queue.add("default/a");
+
+		assertThat(queue.size()).isZero();
+		queue.done(key);
+		assertThat(queue.size()).isEqualTo(1);
+		assertThat(queue.take()).isEqualTo("default/a");
+	}
+
+	@Test
+	void backoffDoublesUpToTheMaximum() {
+		assertThat(queue.backoff("default/a")).isEqualTo(100);
+		assertThat(queue.backoff("default/a")).isEqualTo(200);
+		assertThat(queue.backoff("default/a")).isEqualTo(400);
+		assertThat(queue.backoff("default/a")).isEqualTo(800);
+		assertThat(queue.backoff("default/a")).isEqualTo(1000);
+		for (int i = 0; i < 100; i++) {
+			queue.backoff("default/a");
+		}
+		assertThat(queue.backoff("default/a")).isEqualTo(1000);
+
+		queue.forget("default/a");
+		assertThat(queue.backoff("default/a")).isEqualTo(100);
+	}
+
+}
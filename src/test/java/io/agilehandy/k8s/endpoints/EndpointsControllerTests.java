@@ -0,0 +1,140 @@
+package io.agilehandy.k8s.endpoints;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import io.agilehandy.k8s.common.InformerProperties;
+import io.agilehandy.k8s.eureka.Application;
+import io.fabric8.kubernetes.api.model.Endpoints;
+import io.fabric8.kubernetes.api.model.EndpointsBuilder;
+import io.fabric8.kubernetes.client.informers.cache.Cache;
+import io.fabric8.kubernetes.client.informers.cache.Lister;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class EndpointsControllerTests {
+
+	private final Cache<Endpoints> cache = new Cache<>();
+	private final EndpointsEureka registrar = mock(EndpointsEureka.class);
+	private final InformerProperties properties = new InformerProperties();
+	private EndpointsController<Endpoints> controller;
+
+	@AfterEach
+	void stop() {
+		controller.stop();
+	}
+
+	@Test
+	void aStormOfEventsIsReconciledOnceItsObjectIsQuiet() {
+		when(registrar.register(any(Application.class))).thenReturn(CompletableFuture.completedFuture(true));
+		Endpoints orders = endpoints("orders");
+		start();
+
+		for (int i = 0; i < 100; i++) {
+			controller.enqueue(orders);
+		}
+
+		verify(registrar, timeout(2000)).register(any(Application.class));
+		verify(registrar, after(500).times(1)).register(any(Application.class));
+	}
+
+	@Test
+	void onlyTheConcurrencyWaitsForEureka() {
+		List<CompletableFuture<Boolean>> answers = Collections.synchronizedList(new ArrayList<>());
+		when(registrar.register(any(Application.class))).then(invocation -> {
+			CompletableFuture<Boolean> answer = new CompletableFuture<>();
+			answers.add(answer);
+			return answer;
+		});
+		properties.setReactiveConcurrency(2);
+		List<Endpoints> services = new ArrayList<>();
+		for (int i = 0; i < 6; i++) {
+			services.add(endpoints("svc-" + i));
+		}
+		start();
+
+		services.forEach(controller::enqueue);
+		verify(registrar, after(500).times(2)).register(any(Application.class));
+
+		new ArrayList<>(answers).forEach(answer -> answer.complete(true));
+		verify(registrar, timeout(2000).times(4)).register(any(Application.class));
+		new ArrayList<>(answers).forEach(answer -> answer.complete(true));
+		verify(registrar, timeout(2000).times(6)).register(any(Application.class));
+	}
+
+	@Test
+	void failedObjectsAreRetried() {
+		CompletableFuture<Boolean> refused = new CompletableFuture<>();
+		refused.completeExceptionally(new IllegalStateException("connection refused"));
+		when(registrar.register(any(Application.class))).thenReturn(refused, CompletableFuture.completedFuture(true));
+		Endpoints orders = endpoints("orders");
+		start();
+
+		controller.enqueue(orders);
+
+		verify(registrar, timeout(2000).times(2)).register(any(Application.class));
+		verify(registrar, after(500).times(2)).register(any(Application.class));
+	}
+
+	@Test
+	void objectsAreShardedOnTheirService() {
+		when(registrar.cancel(any(Application.class))).thenReturn(CompletableFuture.completedFuture(true));
+		// a slice of the service orders, owned through the service only
+		Endpoints slice = endpoints("orders-x7k2p");
+		start(new EndpointsSource<Endpoints>() {
+			@Override
+			public List<Application> getApplications(Endpoints ep) {
+				return Collections.singletonList(new Application("orders", "uid-1", "10.0.0.1", 8080));
+			}
+
+			@Override
+			public String getShardKey(Endpoints ep) {
+				return "default/orders";
+			}
+		}, "default/orders"::equals);
+
+		assertThat(controller.seed(Collections.singletonList(slice))).hasSize(1);
+		cache.delete(slice);
+		controller.enqueue(slice);
+
+		verify(registrar, timeout(2000)).cancel(any(Application.class));
+		verify(registrar, never()).untrack(any(Application.class));
+	}
+
+	private Endpoints endpoints(String name) {
+		Endpoints endpoints = new EndpointsBuilder()
+				.withNewMetadata().withName(name).withNamespace("default")
+					.addToLabels(properties.getLabelEnabled(), "true")
+				.endMetadata()
+				.build();
+		cache.add(endpoints);
+		return endpoints;
+	}
+
+	private void start() {
+		start(ep -> Collections.singletonList(new Application(ep.getMetadata().getName(), "uid-1", "10.0.0.1", 8080))
+				, key -> true);
+	}
+
+	private void start(EndpointsSource<Endpoints> source, Ownership ownership) {
+		properties.setReactive(true);
+		properties.setDebounceMillis(50);
+		properties.setRetryBaseDelayMillis(50);
+		controller = new EndpointsController<>("default", registrar, new Lister<>(cache), source
+				, ownership, properties, new SimpleMeterRegistry());
+		controller.start();
+	}
+
+}
@@ -0,0 +1,58 @@
+package io.agilehandy.k8s.endpoints;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import com.netflix.appinfo.InstanceInfo.InstanceStatus;
+import io.agilehandy.k8s.eureka.Application;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EndpointsDiffTests {
+
+	@Test
+	void addedRemovedAndMovedAddresses() {
+		Application kept = new Application("svc", "uid-1", "10.0.0.1", 8080);
+		Application gone = new Application("svc", "uid-2", "10.0.0.2", 8080);
+		Application movedBefore = new Application("svc", "uid-3", "10.0.0.3", 8080);
+		Application movedAfter = new Application("svc", "uid-3", "10.0.0.33", 8080);
+		Application fresh = new Application("svc", "uid-4", "10.0.0.4", 8080);
+
+		EndpointsDiff diff = EndpointsDiff.between(
+				Arrays.asList(kept, gone, movedBefore),
+				Arrays.asList(kept, movedAfter, fresh));
+
+		assertThat(diff.getAdded()).containsExactly(fresh);
+		assertThat(diff.getRemoved()).containsExactly(gone);
+		assertThat(diff.getMoved()).containsExactly(movedAfter);
+	}
+
+	@Test
+	void readinessChangesOnlyTheStatus() {
+		Application up = new Application("svc", "uid-1", "10.0.0.1", 8080);
+		Application notReady = new Application("svc", "uid-1", "10.0.0.1", 8080, InstanceStatus.STARTING);
+
+		// an instance that was in service is taken out of it, not back to starting
+		Application settled = EndpointsDiff.settle(up, notReady);
+		assertThat(settled.getStatus()).isEqualTo(InstanceStatus.OUT_OF_SERVICE);
+		assertThat(EndpointsDiff.settle(settled, notReady).getStatus()).isEqualTo(InstanceStatus.OUT_OF_SERVICE);
+		assertThat(EndpointsDiff.settle(null, notReady).getStatus()).isEqualTo(InstanceStatus.STARTING);
+
+		EndpointsDiff diff = EndpointsDiff.between(Collections.singletonList(up), Collections.singletonList(settled));
+		assertThat(diff.getStatusChanged()).containsExactly(settled);
+		assertThat(diff.getAdded()).isEmpty();
+		assertThat(diff.getRemoved()).isEmpty();
+		assertThat(diff.getMoved()).isEmpty();
+	}
+
+	@Test
+	void unchangedAddressesProduceNoWork() {
+		Application app = new Application("svc", "uid-1", "10.0.0.1", 8080);
+		Application same = new Application("svc", "uid-1", "10.0.0.1", 8080);
+
+		assertThat(EndpointsDiff.between(Collections.singletonList(app),
+				Collections.singletonList(same)).isEmpty()).isTrue();
+	}
+
+}
@@ -0,0 +1,88 @@
+package io.agilehandy.k8s.endpoints;
+
+import java.util.List;
+
+import com.netflix.appinfo.InstanceInfo.InstanceStatus;
+import io.agilehandy.k8s.common.InformerProperties;
+import io.agilehandy.k8s.eureka.Application;
+import io.fabric8.kubernetes.api.model.Endpoints;
+import io.fabric8.kubernetes.api.model.EndpointsBuilder;
+import io.fabric8.kubernetes.api.model.discovery.EndpointSlice;
+import io.fabric8.kubernetes.api.model.discovery.EndpointSliceBuilder;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EndpointsEurekaTests {
+
+	private final EndpointsEureka registrar = new EndpointsEureka(null, new InformerProperties(), null);
+
+	@Test
+	void sliceEndpointsAreApplicationsOfTheirService() {
+		EndpointSlice slice = new EndpointSliceBuilder()
+				.withNewMetadata()
+					.withName("orders-x7k2p")
+					.withNamespace("default")
+					.addToLabels(EndpointsEureka.SERVICE_NAME_LABEL, "orders")
+				.endMetadata()
+				.addNewEndpoint()
+					.withAddresses("10.0.0.1")
+					.withNewTargetRef().withUid("uid-1").endTargetRef()
+				.endEndpoint()
+				.addNewEndpoint()
+					.withAddresses("10.0.0.2")
+					.withNewConditions(true)
+					.withNewTargetRef().withUid("uid-2").endTargetRef()
+				.endEndpoint()
+				.addNewEndpoint()
+					.withAddresses("10.0.0.3")
+					.withNewConditions(false)
+					.withNewTargetRef().withUid("uid-3").endTargetRef()
+				.endEndpoint()
+				.addNewPort().withName("http").withPort(8080).endPort()
+				.build();
+
+		List<Application> applications = registrar.getApplications(slice);
+
+		assertThat(applications).extracting(Application::getRegistrationKey)
+				.containsExactly("orders:uid-1", "orders:uid-2", "orders:uid-3");
+		assertThat(applications).extracting(Application::getHostname)
+				.containsExactly("10.0.0.1", "10.0.0.2", "10.0.0.3");
+		assertThat(applications).extracting(Application::getStatus)
+				.containsExactly(InstanceStatus.UP, InstanceStatus.UP, InstanceStatus.STARTING);
+		assertThat(applications).extracting(Application::getPort).containsOnly(8080);
+	}
+
+	@Test
+	void notReadyAddressesAreStarting() {
+		Endpoints endpoints = new EndpointsBuilder()
+				.withNewMetadata().withName("orders").withNamespace("default").endMetadata()
+				.addNewSubset()
+					.addNewAddress().withIp("10.0.0.1").withNewTargetRef().withUid("uid-1").endTargetRef().endAddress()
+					.addNewNotReadyAddress().withIp("10.0.0.2").withNewTargetRef().withUid("uid-2").endTargetRef()
+					.endNotReadyAddress()
+					.addNewPort().withName("http").withPort(8080).endPort()
+				.endSubset()
+				.build();
+
+		assertThat(registrar.getApplications(endpoints)).extracting(Application::getStatus)
+				.containsExactly(InstanceStatus.UP, InstanceStatus.STARTING);
+
+		InformerProperties readyOnly = new InformerProperties();
+		readyOnly.setRegisterNotReady(false);
+		assertThat(new EndpointsEureka(null, readyOnly, null).getApplications(endpoints))
+				.extracting(Application::getRegistrationKey)
+				.containsExactly("orders:uid-1");
+	}
+
+	@Test
+	void sliceWithoutEndpointsHasNoApplications() {
+		EndpointSlice slice = new EndpointSliceBuilder()
+				.withNewMetadata().withName("orders-x7k2p").endMetadata()
+				.addNewPort().withName("http").withPort(8080).endPort()
+				.build();
+
+		assertThat(registrar.getApplications(slice)).isEmpty();
+	}
+
+}
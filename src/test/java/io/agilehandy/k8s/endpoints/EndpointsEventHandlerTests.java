@@ -0,0 +1,99 @@
+package io.agilehandy.k8s.endpoints;
+
+import java.util.concurrent.CompletableFuture;
+
+import io.agilehandy.k8s.common.InformerProperties;
+import io.agilehandy.k8s.eureka.Application;
+import io.agilehandy.k8s.eureka.Eureka;
+import io.agilehandy.k8s.lease.LeaseRenewalScheduler;
+import io.fabric8.kubernetes.api.model.Endpoints;
+import io.fabric8.kubernetes.api.model.EndpointsBuilder;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.informers.cache.Cache;
+import io.fabric8.kubernetes.client.informers.cache.Lister;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class EndpointsEventHandlerTests {
+
+	private final Eureka lite = mock(Eureka.class);
+	private final LeaseRenewalScheduler scheduler = mock(LeaseRenewalScheduler.class);
+	private final InformerProperties properties = new InformerProperties();
+	private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+	private final Cache<Endpoints> informerCache = new Cache<>();
+	private EndpointsController<Endpoints> controller;
+	private EndpointsEventHandler<Endpoints> handler;
+
+	@BeforeEach
+	void start() {
+		when(lite.registerAsync(any())).thenReturn(CompletableFuture.completedFuture(true));
+		when(lite.cancelAsync(any(), any())).thenReturn(CompletableFuture.completedFuture(true));
+		EndpointsEureka registrar = new EndpointsEureka(lite, properties, scheduler);
+		controller = new EndpointsController<>("default", registrar, new Lister<>(informerCache)
+				, registrar::getRegisteredApplications, key -> true, properties, meterRegistry);
+		handler = new EndpointsEventHandler<>(controller, properties
+				, new EndpointsCache(mock(KubernetesClient.class), properties, meterRegistry), meterRegistry);
+		controller.start();
+	}
+
+	@AfterEach
+	void stop() {
+		controller.stop();
+	}
+
+	@Test
+	void takingTheLabelOffCancelsTheInstances() {
+		Endpoints labeled = endpoints("1", true);
+		informerCache.add(labeled);
+		handler.onAdd(labeled);
+		verify(lite, timeout(2000)).registerAsync(argThat(app -> app.getInstance_id().equals("uid-1")));
+
+		Endpoints unlabeled = endpoints("2", false);
+		informerCache.update(unlabeled);
+		handler.onUpdate(labeled, unlabeled);
+
+		verify(lite, timeout(2000)).cancelAsync("orders", "uid-1");
+		verify(scheduler).unschedule(argThat(app -> app.getInstance_id().equals("uid-1")));
+	}
+
+	@Test
+	void aDeleteOfAnObjectNoLongerLabeledCancelsTheInstances() {
+		Endpoints labeled = endpoints("1", true);
+		informerCache.add(labeled);
+		handler.onAdd(labeled);
+		verify(lite, timeout(2000)).registerAsync(any(Application.class));
+
+		// with server side filtering, taking the label off is a delete of the unlabeled object
+		Endpoints unlabeled = endpoints("2", false);
+		informerCache.delete(labeled);
+		handler.onDelete(unlabeled, false);
+
+		verify(lite, timeout(2000)).cancelAsync("orders", "uid-1");
+		verify(scheduler).unschedule(argThat(app -> app.getInstance_id().equals("uid-1")));
+	}
+
+	private Endpoints endpoints(String resourceVersion, boolean enabled) {
+		return new EndpointsBuilder()
+				.withNewMetadata()
+					.withName("orders").withNamespace("default").withUid("ep-uid").withResourceVersion(resourceVersion)
+					.addToLabels(properties.getLabelEnabled(), String.valueOf(enabled))
+					.addToLabels(properties.getLabelRegister(), "true")
+				.endMetadata()
+				.addNewSubset()
+					.addNewAddress().withIp("10.0.0.1").withNewTargetRef().withUid("uid-1").endTargetRef().endAddress()
+					.addNewPort().withName("http").withPort(8080).endPort()
+				.endSubset()
+				.build();
+	}
+
+}
@@ -0,0 +1,74 @@
+package io.agilehandy.k8s.endpoints;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+
+import com.netflix.appinfo.InstanceInfo.InstanceStatus;
+import io.agilehandy.k8s.common.InformerProperties;
+import io.agilehandy.k8s.eureka.Application;
+import io.agilehandy.k8s.eureka.Eureka;
+import io.agilehandy.k8s.eureka.Instance;
+import io.agilehandy.k8s.eureka.Registration;
+import org.junit.jupiter.api.Test;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class RegistryReconcilerTests {
+
+	private final Eureka lite = mock(Eureka.class);
+	private final EndpointsEureka registrar = mock(EndpointsEureka.class);
+	private final RegistryReconciler reconciler = new RegistryReconciler(lite, registrar, new InformerProperties());
+
+	@Test
+	void onlyTheInstancesTheControllerRegisteredAreCancelled() {
+		when(registrar.cancel(any())).thenReturn(CompletableFuture.completedFuture(true));
+		when(registrar.register(any(Application.class))).thenReturn(CompletableFuture.completedFuture(true));
+		Registration running = registration("uid-1", "10.0.0.1", Eureka.MANAGED_BY, "default");
+		Registration gone = registration("uid-2", "10.0.0.2", Eureka.MANAGED_BY, "default");
+		// a eureka client of its own, registered under the same name
+		Registration foreign = registration("10.0.0.3:orders:8080", "10.0.0.3", null, null);
+		when(lite.getApplications()).thenReturn(Collections.singletonMap("ORDERS"
+				, Arrays.asList(running, gone, foreign)));
+
+		reconciler.reconcile(Collections.singletonList(new Application("orders", "uid-1", "10.0.0.1", 8080))
+				, key -> true);
+
+		verify(registrar).track(argThat(app -> app.getInstance_id().equals("uid-1")));
+		verify(registrar).cancel(argThat(app -> app.getInstance_id().equals("uid-2")));
+		verify(registrar, never()).cancel(argThat(app -> app.getInstance_id().equals("10.0.0.3:orders:8080")));
+		verify(registrar, never()).register(any(Application.class));
+	}
+
+	@Test
+	void onlyTheInstancesOfOwnedEndpointsAreCancelled() {
+		when(registrar.cancel(any())).thenReturn(CompletableFuture.completedFuture(true));
+		Registration gone = registration("uid-1", "10.0.0.1", Eureka.MANAGED_BY, "default");
+		// the same service name in a namespace another replica owns
+		Registration otherShard = registration("uid-2", "10.0.0.2", Eureka.MANAGED_BY, "staging");
+		// registered by an older controller, without its namespace
+		Registration unknown = registration("uid-3", "10.0.0.3", Eureka.MANAGED_BY, null);
+		when(lite.getApplications()).thenReturn(Collections.singletonMap("ORDERS"
+				, Arrays.asList(gone, otherShard, unknown)));
+
+		reconciler.reconcile(Collections.emptyList(), "default/orders"::equals);
+
+		verify(registrar).cancel(argThat(app -> app.getInstance_id().equals("uid-1")));
+		verify(registrar, never()).cancel(argThat(app -> app.getInstance_id().equals("uid-2")));
+		verify(registrar, never()).cancel(argThat(app -> app.getInstance_id().equals("uid-3")));
+	}
+
+	private static Registration registration(String instanceId, String hostname, String managedBy
+			, String namespace) {
+		Instance instance = new Instance(InstanceStatus.UP, 1, 1);
+		instance.setManagedBy(managedBy);
+		return new Registration(new Application("ORDERS", instanceId, hostname, 8080, InstanceStatus.UP, namespace)
+				, instance);
+	}
+
+}
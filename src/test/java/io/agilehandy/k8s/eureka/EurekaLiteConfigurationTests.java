@@ -0,0 +1,16 @@
+package io.agilehandy.k8s.eureka;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EurekaLiteConfigurationTests {
+
+	@Test
+	void circuitPausesStayWithinTheLease() {
+		assertThat(EurekaLiteConfiguration.circuitMaxOpenSeconds(30, 90, 30)).isEqualTo(30);
+		assertThat(EurekaLiteConfiguration.circuitMaxOpenSeconds(30, 40, 30)).isEqualTo(10);
+		assertThat(EurekaLiteConfiguration.circuitMaxOpenSeconds(30, 30, 30)).isEqualTo(1);
+	}
+
+}
@@ -0,0 +1,94 @@
+package io.agilehandy.k8s.eureka;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.netflix.discovery.shared.resolver.EurekaEndpoint;
+import com.netflix.discovery.shared.transport.EurekaHttpClient;
+import com.netflix.discovery.shared.transport.EurekaHttpResponse;
+import com.netflix.discovery.shared.transport.TransportClientFactory;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class EurekaPeersTests {
+
+	private static final int KEYS = 3000;
+
+	// client -> the service url it was built for
+	private final Map<EurekaHttpClient, String> clients = new ConcurrentHashMap<>();
+
+	private final EurekaPeers peers = new EurekaPeers(Arrays.asList("http://a/eureka/", "http://b/eureka/"
+			, "http://c/eureka/"), this::factory, 2, 60000);
+
+	@Test
+	void everyInstanceSticksToOnePeer() {
+		Map<String, String> routed = new HashMap<>();
+		for (int i = 0; i < KEYS; i++) {
+			routed.put(key(i), send(key(i), null));
+		}
+
+		Map<String, Integer> load = new HashMap<>();
+		routed.values().forEach(peer -> load.merge(peer, 1, Integer::sum));
+		assertThat(load).hasSize(3);
+		load.values().forEach(count -> assertThat(count).isBetween(KEYS / 3 * 7 / 10, KEYS / 3 * 13 / 10));
+		for (int i = 0; i < KEYS; i++) {
+			assertThat(send(key(i), null)).isEqualTo(routed.get(key(i)));
+		}
+	}
+
+	@Test
+	void aFailingPeerIsSkippedAndQuarantined() {
+		Map<String, String> routed = new HashMap<>();
+		for (int i = 0; i < KEYS; i++) {
+			routed.put(key(i), send(key(i), null));
+		}
+
+		// every request of the failing peer's instances still succeeds elsewhere
+		for (int i = 0; i < KEYS; i++) {
+			assertThat(send(key(i), "http://b/eureka/")).isNotEqualTo("http://b/eureka/");
+		}
+		assertThat(peers.getHealthy()).isEqualTo(2);
+
+		// and the instances of the other peers stay where they were
+		for (int i = 0; i < KEYS; i++) {
+			if (!routed.get(key(i)).equals("http://b/eureka/")) {
+				assertThat(send(key(i), null)).isEqualTo(routed.get(key(i)));
+			}
+		}
+	}
+
+	// send a request, failing on the given peer, and return the peer answering it
+	private String send(String key, String failing) {
+		String[] answered = new String[1];
+		peers.send(key, client -> {
+			String peer = clients.get(client);
+			if (peer.equals(failing)) {
+				throw new IllegalStateException("connection refused");
+			}
+			answered[0] = peer;
+			return EurekaHttpResponse.status(200);
+		});
+		return answered[0];
+	}
+
+	private TransportClientFactory factory() {
+		TransportClientFactory factory = mock(TransportClientFactory.class);
+		when(factory.newClient(any())).thenAnswer(invocation -> {
+			EurekaHttpClient client = mock(EurekaHttpClient.class);
+			clients.put(client, invocation.<EurekaEndpoint>getArgument(0).getServiceUrl());
+			return client;
+		});
+		return factory;
+	}
+
+	private static String key(int i) {
+		return "SVC-" + (i % 20) + ":pod-" + i;
+	}
+
+}
@@ -0,0 +1,59 @@
+package io.agilehandy.k8s.eureka;
+
+import com.netflix.appinfo.InstanceInfo;
+import com.netflix.discovery.shared.Application;
+import com.netflix.discovery.shared.Applications;
+import com.netflix.discovery.shared.transport.EurekaHttpClient;
+import com.netflix.discovery.shared.transport.EurekaHttpResponse;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class EurekaRegistryMirrorTests {
+
+	private final EurekaHttpClient client = mock(EurekaHttpClient.class);
+	private final EurekaRegistryMirror mirror = new EurekaRegistryMirror(() -> client, 3600);
+
+	@Test
+	void aDeltaIsPublishedAsANewSnapshot() {
+		Applications full = applications(instance("uid-1", null), instance("uid-2", null));
+		full.setAppsHashCode(full.getReconcileHashCode());
+		when(client.getApplications()).thenReturn(EurekaHttpResponse.anEurekaHttpResponse(200, full).build());
+		Applications before = mirror.getApplications();
+
+		Applications delta = applications(instance("uid-2", InstanceInfo.ActionType.DELETED)
+				, instance("uid-3", InstanceInfo.ActionType.ADDED));
+		delta.setAppsHashCode(applications(instance("uid-1", null), instance("uid-3", null)).getReconcileHashCode());
+		when(client.getDelta()).thenReturn(EurekaHttpResponse.anEurekaHttpResponse(200, delta).build());
+		mirror.refresh();
+		mirror.shutdown();
+
+		assertThat(ids(before)).containsExactlyInAnyOrder("uid-1", "uid-2");
+		assertThat(ids(mirror.getApplications())).containsExactlyInAnyOrder("uid-1", "uid-3");
+	}
+
+	private static Applications applications(InstanceInfo... instances) {
+		Application application = new Application("ORDERS");
+		for (InstanceInfo instance : instances) {
+			application.addInstance(instance);
+		}
+		Applications applications = new Applications();
+		applications.addApplication(application);
+		return applications;
+	}
+
+	private static InstanceInfo instance(String id, InstanceInfo.ActionType action) {
+		InstanceInfo instance = InstanceInfo.Builder.newBuilder().setAppName("ORDERS").setInstanceId(id)
+				.setHostName(id).setStatus(InstanceInfo.InstanceStatus.UP).build();
+		instance.setActionType(action);
+		return instance;
+	}
+
+	private static String[] ids(Applications applications) {
+		return applications.getRegisteredApplications("ORDERS").getInstances().stream()
+				.map(InstanceInfo::getId).toArray(String[]::new);
+	}
+
+}
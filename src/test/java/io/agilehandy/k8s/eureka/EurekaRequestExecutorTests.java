@@ -0,0 +1,146 @@
+package io.agilehandy.k8s.eureka;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class EurekaRequestExecutorTests {
+
+	@Test
+	void heartbeatsWaitForEurekaAndRunByLeaseExpiry() throws Exception {
+		CircuitBreaker breaker = new CircuitBreaker(1, 200, 1000);
+		EurekaRequestExecutor requests = new EurekaRequestExecutor(1, 0, breaker, new AdaptiveLimit(1, 1, false), null);
+		try {
+			breaker.failed("connection refused");
+
+			CompletableFuture<Boolean> registration = requests.submit(() -> true);
+			assertThatThrownBy(registration::get).isInstanceOf(ExecutionException.class)
+					.hasCauseInstanceOf(RejectedExecutionException.class);
+
+			List<Long> renewed = Collections.synchronizedList(new ArrayList<>());
+			List<CompletableFuture<Boolean>> heartbeats = new ArrayList<>();
+			for (long expiry : new long[] { 3000, 1000, 2000 }) {
+				heartbeats.add(requests.submit(() -> {
+					renewed.add(expiry);
+					// eureka answers again
+					breaker.succeeded();
+					return true;
+				}, expiry));
+			}
+
+			CompletableFuture.allOf(heartbeats.toArray(new CompletableFuture[0])).get(5, TimeUnit.SECONDS);
+			assertThat(renewed).containsExactly(1000L, 2000L, 3000L);
+			assertThat(requests.isCircuitOpen()).isFalse();
+		} finally {
+			requests.shutdown();
+		}
+	}
+
+	@Test
+	void callsRunOnThreadsOfTheirOwnWithinTheLimit() throws Exception {
+		AtomicInteger threads = new AtomicInteger();
+		ThreadFactory threadsPerCall = r -> {
+			threads.incrementAndGet();
+			return new Thread(r);
+		};
+		EurekaRequestExecutor requests = new EurekaRequestExecutor(2, 0, new CircuitBreaker(0, 1, 1)
+				, new AdaptiveLimit(1, 2, false), threadsPerCall);
+		try {
+			CountDownLatch eureka = new CountDownLatch(1);
+			AtomicInteger running = new AtomicInteger();
+			AtomicInteger mostRunning = new AtomicInteger();
+			List<CompletableFuture<Boolean>> calls = new ArrayList<>();
+			for (int i = 0; i < 10; i++) {
+				calls.add(requests.submit(() -> {
+					mostRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+					eureka.await();
+					running.decrementAndGet();
+					return true;
+				}));
+			}
+			Thread.sleep(200);
+			assertThat(requests.getInFlight()).isEqualTo(2);
+			eureka.countDown();
+
+			CompletableFuture.allOf(calls.toArray(new CompletableFuture[0])).get(5, TimeUnit.SECONDS);
+			assertThat(mostRunning.get()).isEqualTo(2);
+			assertThat(threads.get()).isEqualTo(10);
+		} finally {
+			requests.shutdown();
+		}
+	}
+
+	@Test
+	void virtualThreadsOnlyFromJava21() throws Exception {
+		ThreadFactory virtualThreads = EurekaRequestExecutor.virtualThreadFactory("EUREKA_REQUEST_");
+		String version = System.getProperty("java.specification.version");
+		if (version.startsWith("1.") || Integer.parseInt(version) < 21) {
+			assertThat(virtualThreads).isNull();
+			return;
+		}
+		Thread thread = virtualThreads.newThread(() -> { });
+		assertThat(Thread.class.getMethod("isVirtual").invoke(thread)).isEqualTo(true);
+		assertThat(thread.getName()).isEqualTo("EUREKA_REQUEST_1");
+	}
+
+	@Test
+	void aTimeoutCountsAgainstTheLimitOnce() throws Exception {
+		AdaptiveLimit limit = new AdaptiveLimit(1, 10, true);
+		EurekaRequestExecutor requests = new EurekaRequestExecutor(1, 100, new CircuitBreaker(0, 1, 1), limit, null);
+		try {
+			CompletableFuture<Boolean> call = requests.submit(() -> {
+				// a socket read the interrupt does not abort
+				long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(300);
+				while (System.nanoTime() < end) {
+					Thread.yield();
+				}
+				return EurekaRequestExecutor.timedOut();
+			});
+
+			assertThatThrownBy(() -> call.get(5, TimeUnit.SECONDS)).isInstanceOf(ExecutionException.class)
+					.hasCauseInstanceOf(TimeoutException.class);
+			// runs once the late call returned
+			assertThat(requests.submit(EurekaRequestExecutor::timedOut).get(5, TimeUnit.SECONDS)).isFalse();
+			assertThat(limit.get()).isEqualTo(9);
+		} finally {
+			requests.shutdown();
+		}
+	}
+
+	@Test
+	void limitBacksOffOnSlowAndFailedRequestsAndRecovers() {
+		AdaptiveLimit limit = new AdaptiveLimit(1, 20, true);
+		for (int i = 0; i < 100; i++) {
+			limit.succeeded(TimeUnit.MILLISECONDS.toNanos(10));
+		}
+		assertThat(limit.get()).isEqualTo(20);
+
+		for (int i = 0; i < 5; i++) {
+			limit.succeeded(TimeUnit.MILLISECONDS.toNanos(100));
+		}
+		assertThat(limit.get()).isLessThan(20);
+		for (int i = 0; i < 50; i++) {
+			limit.failed();
+		}
+		assertThat(limit.get()).isEqualTo(1);
+
+		for (int i = 0; i < 1000; i++) {
+			limit.succeeded(TimeUnit.MILLISECONDS.toNanos(10));
+		}
+		assertThat(limit.get()).isEqualTo(20);
+	}
+
+}
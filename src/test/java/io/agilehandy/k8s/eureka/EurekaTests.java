@@ -0,0 +1,60 @@
+package io.agilehandy.k8s.eureka;
+
+import java.util.concurrent.TimeUnit;
+
+import com.netflix.appinfo.InstanceInfo;
+import com.netflix.discovery.shared.resolver.ClosableResolver;
+import com.netflix.discovery.shared.transport.EurekaHttpClient;
+import com.netflix.discovery.shared.transport.EurekaHttpClientFactory;
+import com.netflix.discovery.shared.transport.EurekaHttpResponse;
+import com.netflix.discovery.shared.transport.TransportClientFactory;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.cloud.commons.util.InetUtils;
+import org.springframework.cloud.commons.util.InetUtilsProperties;
+import org.springframework.cloud.netflix.eureka.EurekaClientConfigBean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class EurekaTests {
+
+	private final EurekaHttpClient client = mock(EurekaHttpClient.class);
+
+	private final Eureka lite = new Eureka(new InetUtils(new InetUtilsProperties()), null
+			, new EurekaClientConfigBean(), new EurekaLiteProperties(), new SimpleMeterRegistry()) {
+		@Override
+		public EurekaTransport createTransport() {
+			return new EurekaTransport(mock(EurekaHttpClientFactory.class), client
+					, mock(TransportClientFactory.class), mock(ClosableResolver.class));
+		}
+	};
+
+	@AfterEach
+	void shutdown() {
+		lite.shutdown();
+	}
+
+	@Test
+	void aHeartbeatAnsweredWith404RegistersOnlyInstancesStillWanted() throws Exception {
+		InstanceInfo instanceInfo = lite.getInstanceInfo(new Application("orders", "uid-1", "10.0.0.1", 8080));
+		when(client.sendHeartBeat(any(), any(), any(), any()))
+				.thenReturn(EurekaHttpResponse.anEurekaHttpResponse(404, InstanceInfo.class).build());
+		when(client.register(any())).thenReturn(EurekaHttpResponse.anEurekaHttpResponse(204).build());
+
+		// cancelled while its heartbeat was on the way
+		assertThat(lite.renewAsync(instanceInfo, 0, () -> false).get(5, TimeUnit.SECONDS)).isFalse();
+		verify(client, never()).register(any());
+
+		// eureka lost it, e.g. after a restart
+		assertThat(lite.renewAsync(instanceInfo, 0, () -> true).get(5, TimeUnit.SECONDS)).isTrue();
+		verify(client).register(instanceInfo);
+	}
+
+}
@@ -0,0 +1,55 @@
+package io.agilehandy.k8s.lease;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BooleanSupplier;
+
+import io.agilehandy.k8s.eureka.Application;
+import io.agilehandy.k8s.eureka.Eureka;
+import io.agilehandy.k8s.eureka.EurekaLiteProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import org.springframework.cloud.commons.util.InetUtils;
+import org.springframework.cloud.commons.util.InetUtilsProperties;
+import org.springframework.cloud.netflix.eureka.EurekaInstanceConfigBean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class LeaseRenewalSchedulerTests {
+
+	private final Eureka lite = mock(Eureka.class);
+	private LeaseRenewalScheduler scheduler;
+
+	@AfterEach
+	void destroy() {
+		scheduler.destroy();
+	}
+
+	@Test
+	void anInstanceUnscheduledDuringItsHeartbeatIsNoLongerWanted() {
+		// the heartbeat stays in flight
+		when(lite.renewAsync(any(), anyLong(), any())).thenReturn(new CompletableFuture<>());
+		EurekaInstanceConfigBean instanceConfig = new EurekaInstanceConfigBean(new InetUtils(new InetUtilsProperties()));
+		instanceConfig.setLeaseRenewalIntervalInSeconds(1);
+		scheduler = new LeaseRenewalScheduler(lite, new EurekaLiteProperties(), instanceConfig, new SimpleMeterRegistry());
+		Application orders = new Application("orders", "uid-1", "10.0.0.1", 8080);
+
+		scheduler.schedule(orders);
+		ArgumentCaptor<BooleanSupplier> stillRegistered = ArgumentCaptor.forClass(BooleanSupplier.class);
+		verify(lite, timeout(5000)).renewAsync(any(), anyLong(), stillRegistered.capture());
+		assertThat(stillRegistered.getValue().getAsBoolean()).isTrue();
+
+		scheduler.unschedule(orders);
+		// so eureka answering the heartbeat with a 404 does not register it again
+		assertThat(stillRegistered.getValue().getAsBoolean()).isFalse();
+	}
+
+}
@@ -0,0 +1,57 @@
+package io.agilehandy.k8s.lease;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import com.netflix.appinfo.InstanceInfo.InstanceStatus;
+import io.agilehandy.k8s.eureka.Application;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RegistrationSnapshotTests {
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void entriesSurviveTheRoundTrip() throws IOException {
+		Path file = directory.resolve("state/registrations");
+		Application starting = new Application("orders", "uid-1", "10.0.0.1", 8080, InstanceStatus.STARTING
+				, "default");
+		Application up = new Application("billing", "uid-2", "10.0.0.2", 9090);
+
+		RegistrationSnapshot.write(file, Arrays.asList(
+				new RegistrationSnapshot.Entry(starting, InstanceStatus.STARTING, 1000L, 2000L),
+				new RegistrationSnapshot.Entry(up, InstanceStatus.UNKNOWN, 0L, 0L)));
+		List<RegistrationSnapshot.Entry> entries = RegistrationSnapshot.read(file);
+
+		assertThat(entries).hasSize(2);
+		RegistrationSnapshot.Entry first = entries.get(0);
+		assertThat(first.getApplication().getRegistrationKey()).isEqualTo("orders:uid-1");
+		assertThat(first.getApplication().getHostname()).isEqualTo("10.0.0.1");
+		assertThat(first.getApplication().getPort()).isEqualTo(8080);
+		assertThat(first.getApplication().getStatus()).isEqualTo(InstanceStatus.STARTING);
+		assertThat(first.getLastRenewed()).isEqualTo(1000L);
+		assertThat(first.getLastDirty()).isEqualTo(2000L);
+		assertThat(first.getApplication().getNamespace()).isEqualTo("default");
+		assertThat(entries.get(1).getApplication().getNamespace()).isNull();
+		assertThat(entries.get(1).getApplication().getStatus()).isEqualTo(InstanceStatus.UP);
+		assertThat(entries.get(1).getStatus()).isEqualTo(InstanceStatus.UNKNOWN);
+		assertThat(Files.exists(directory.resolve("state/registrations.tmp"))).isFalse();
+	}
+
+	@Test
+	void missingFileIsEmptyAndForeignFileIsRejected() throws IOException {
+		assertThat(RegistrationSnapshot.read(directory.resolve("none"))).isEmpty();
+
+		Path foreign = Files.write(directory.resolve("foreign"), "not a snapshot".getBytes());
+		assertThatThrownBy(() -> RegistrationSnapshot.read(foreign)).isInstanceOf(IOException.class);
+	}
+
+}
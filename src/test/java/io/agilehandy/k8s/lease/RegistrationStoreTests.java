@@ -0,0 +1,117 @@
+package io.agilehandy.k8s.lease;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import com.netflix.appinfo.InstanceInfo.InstanceStatus;
+import io.agilehandy.k8s.eureka.Application;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RegistrationStoreTests {
+
+	private final RegistrationStore store = new RegistrationStore();
+
+	@Test
+	void churnKeepsEveryInstanceReachable() {
+		Map<String, Long> expected = new HashMap<>();
+		Random random = new Random(42);
+		for (int i = 0; i < 100000; i++) {
+			Application app = app(random.nextInt(5000));
+			String key = app.getRegistrationKey();
+			if (random.nextBoolean()) {
+				long due = random.nextInt(30000);
+				boolean added = store.add(app, due) != null;
+				assertThat(added).isEqualTo(!expected.containsKey(key));
+				expected.putIfAbsent(key, due);
+			} else {
+				assertThat(store.remove(key)).isEqualTo(expected.containsKey(key));
+				expected.remove(key);
+			}
+		}
+
+		assertThat(store.size()).isEqualTo(expected.size());
+		assertThat(store.applications()).hasSize(expected.size());
+		for (int i = 0; i < 5000; i++) {
+			String key = app(i).getRegistrationKey();
+			assertThat(store.contains(key)).isEqualTo(expected.containsKey(key));
+			assertThat(store.getDue(key)).isEqualTo(expected.getOrDefault(key, 0L));
+		}
+
+		// the heap still hands out every instance, in order of due time
+		long previous = -1;
+		int polled = 0;
+		for (long now = 0; now <= 30000; now += 1000) {
+			for (Application app : store.pollDue(now)) {
+				long due = expected.get(app.getRegistrationKey());
+				assertThat(due).isGreaterThanOrEqualTo(previous).isLessThanOrEqualTo(now);
+				previous = due;
+				polled++;
+			}
+		}
+		assertThat(polled).isEqualTo(expected.size());
+	}
+
+	@Test
+	void stateFollowsTheInstanceThroughResizes() {
+		Application first = app(0).withStatus(InstanceStatus.STARTING);
+		String key = store.add(first, 7);
+		store.record(first, true, 1234L);
+		store.record(first, false, 0L);
+		assertThat(store.pollDue(7)).containsExactly(first);
+
+		for (int i = 1; i < 1000; i++) {
+			store.add(app(i), 100 + i);
+		}
+
+		assertThat(store.getStatus(key)).isEqualTo(InstanceStatus.STARTING);
+		assertThat(store.getLastDirty(key)).isEqualTo(1234L);
+		assertThat(store.getFailures(key)).isEqualTo(1);
+		assertThat(store.getLastRenewed(key)).isPositive();
+		// still in flight, out of the heap until it completes
+		assertThat(store.pollDue(100)).isEmpty();
+		store.complete(key, true, 50);
+		assertThat(store.getFailures(key)).isZero();
+		assertThat(store.getDue(key)).isEqualTo(50);
+		assertThat(store.pollDue(101)).extracting(Application::getRegistrationKey)
+				.containsExactly(key, app(1).getRegistrationKey());
+
+		store.statusUpdated(first.withStatus(InstanceStatus.UP));
+		assertThat(store.getStatus(key)).isEqualTo(InstanceStatus.UP);
+		assertThat(store.remove(key)).isTrue();
+		assertThat(store.getStatus(key)).isEqualTo(InstanceStatus.UNKNOWN);
+	}
+
+	@Test
+	void oldestRenewalFollowsRenewalsRemovalsAndResizes() {
+		Map<String, Long> renewed = new HashMap<>();
+		Random random = new Random(7);
+		for (int i = 0; i < 20000; i++) {
+			Application app = app(random.nextInt(2000));
+			String key = app.getRegistrationKey();
+			int action = random.nextInt(3);
+			if (action == 0) {
+				long lastRenewed = random.nextInt(1000);
+				if (store.restore(new RegistrationSnapshot.Entry(app, InstanceStatus.UP, lastRenewed, 0L), 0) != null) {
+					renewed.put(key, lastRenewed);
+				}
+			} else if (action == 1 && renewed.containsKey(key)) {
+				store.pollDue(Long.MAX_VALUE);
+				store.complete(key, true, 0);
+				renewed.put(key, store.getLastRenewed(key));
+			} else {
+				store.remove(key);
+				renewed.remove(key);
+			}
+			long oldest = renewed.values().stream().filter(at -> at > 0).min(Long::compare).orElse(0L);
+			assertThat(store.getOldestRenewal()).isEqualTo(oldest);
+		}
+	}
+
+	private static Application app(int pod) {
+		return new Application("svc-" + (pod % 50), "pod-" + pod, "10.0.0." + (pod % 250), 8080);
+	}
+
+}
@@ -0,0 +1,56 @@
+package io.agilehandy.k8s.sharding;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HashRingTests {
+
+	private static final int KEYS = 10000;
+
+	@Test
+	void keysAreSpreadEvenly() {
+		HashRing ring = new HashRing(Arrays.asList("a", "b", "c", "d"), 128);
+
+		Map<String, Integer> owned = new HashMap<>();
+		for (int i = 0; i < KEYS; i++) {
+			owned.merge(ring.owner("ns-" + (i % 7) + "/svc-" + i), 1, Integer::sum);
+		}
+
+		assertThat(owned).hasSize(4);
+		owned.values().forEach(count -> assertThat(count).isBetween(KEYS / 4 * 7 / 10, KEYS / 4 * 13 / 10));
+	}
+
+	@Test
+	void onlyTheKeysOfTheJoiningMemberMove() {
+		HashRing before = new HashRing(Arrays.asList("a", "b", "c"), 128);
+		HashRing after = new HashRing(Arrays.asList("a", "b", "c", "d"), 128);
+
+		int moved = 0;
+		for (int i = 0; i < KEYS; i++) {
+			String key = "default/svc-" + i;
+			if (!before.owner(key).equals(after.owner(key))) {
+				assertThat(after.owner(key)).isEqualTo("d");
+				moved++;
+			}
+		}
+		assertThat(moved).isBetween(KEYS / 4 * 7 / 10, KEYS / 4 * 13 / 10);
+	}
+
+	@Test
+	void ownerDoesNotDependOnTheOrderOfMembers() {
+		HashRing ring = new HashRing(Arrays.asList("a", "b", "c"), 16);
+		HashRing reversed = new HashRing(Arrays.asList("c", "b", "a"), 16);
+
+		for (int i = 0; i < 1000; i++) {
+			assertThat(ring.owner("default/svc-" + i)).isEqualTo(reversed.owner("default/svc-" + i));
+		}
+		assertThat(new HashRing(Collections.emptyList(), 16).owner("default/svc")).isNull();
+	}
+
+}